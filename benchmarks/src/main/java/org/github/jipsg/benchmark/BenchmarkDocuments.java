@@ -0,0 +1,85 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.benchmark;
+
+import org.github.jipsg.common.image.BufferedImageFactory;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+/**
+ * Locates the test documents of the main project used by the benchmarks.
+ */
+public class BenchmarkDocuments {
+
+    /**
+     * System property to override the location of "src/test/documents"
+     */
+    public static final String DOCUMENTS_DIR_PROPERTY = "benchmark.documents";
+
+    public static File getDocumentsDir() {
+        String documentsDir = System.getProperty(DOCUMENTS_DIR_PROPERTY);
+
+        if (documentsDir != null) {
+            return new File(documentsDir);
+        } else if (new File("src/test/documents").exists()) {
+            return new File("src/test/documents");
+        } else {
+            return new File("../src/test/documents");
+        }
+    }
+
+    public static File getPdfFile(String name) {
+        return new File(new File(getDocumentsDir(), "pdf"), name);
+    }
+
+    /**
+     * Load one of the PNG images rendered at 300 DPI and convert it to the
+     * requested image type.
+     *
+     * @param name      the name of the PNG file
+     * @param imageType the image type, e.g. "BufferedImage.TYPE_INT_RGB"
+     * @return the image
+     * @throws Exception loading the image failed
+     */
+    public static BufferedImage getImage(String name, int imageType) throws Exception {
+        BufferedImage bufferedImage = BufferedImageFactory.create(new File(new File(getDocumentsDir(), "png"), name));
+        BufferedImage result = new BufferedImage(bufferedImage.getWidth(), bufferedImage.getHeight(), imageType);
+        Graphics graphics = result.getGraphics();
+        graphics.drawImage(bufferedImage, 0, 0, null);
+        graphics.dispose();
+        return result;
+    }
+
+    /**
+     * Map the name of an image type to its "BufferedImage" constant.
+     */
+    public static int getImageType(String name) {
+        if ("INT_RGB".equals(name)) {
+            return BufferedImage.TYPE_INT_RGB;
+        } else if ("3BYTE_BGR".equals(name)) {
+            return BufferedImage.TYPE_3BYTE_BGR;
+        } else if ("BYTE_GRAY".equals(name)) {
+            return BufferedImage.TYPE_BYTE_GRAY;
+        } else if ("BYTE_BINARY".equals(name)) {
+            return BufferedImage.TYPE_BYTE_BINARY;
+        } else {
+            throw new IllegalArgumentException("Unknown image type : " + name);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.benchmark;
+
+import org.github.jipsg.common.image.compare.ImageComparatorResult;
+import org.github.jipsg.common.image.compare.impl.BilevelImageComparator;
+import org.github.jipsg.common.image.compare.impl.XorImageComparator;
+import org.github.jipsg.common.image.compare.impl.XorVerdictImageComparator;
+import org.github.jipsg.common.image.diff.impl.XorImageDiffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per-page diff throughput of the image differ and comparators
+ * using pages rendered at 300 DPI.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class ImageDiffBenchmark {
+
+    @Param({"identical", "similar", "different"})
+    public String pair;
+
+    @Param({"INT_RGB", "3BYTE_BGR", "BYTE_BINARY"})
+    public String imageType;
+
+    private BufferedImage lhs;
+    private BufferedImage rhs;
+
+    @Setup
+    public void setup() throws Exception {
+        int type = BenchmarkDocuments.getImageType(imageType);
+
+        if ("identical".equals(pair)) {
+            lhs = BenchmarkDocuments.getImage("open-office-01.pdf.300.0.png", type);
+            rhs = BenchmarkDocuments.getImage("open-office-01.pdf.300.0.png", type);
+        } else if ("similar".equals(pair)) {
+            lhs = BenchmarkDocuments.getImage("open-office-02.pdf.300.0.png", type);
+            rhs = BenchmarkDocuments.getImage("open-office-02-similar.pdf.300.0.png", type);
+        } else {
+            lhs = BenchmarkDocuments.getImage("open-office-01.pdf.300.0.png", type);
+            rhs = BenchmarkDocuments.getImage("open-office-02.pdf.300.0.png", type);
+        }
+    }
+
+    @Benchmark
+    public BufferedImage diff() {
+        return new XorImageDiffer().diff(lhs, rhs);
+    }
+
+    @Benchmark
+    public ImageComparatorResult compare() {
+        return new XorImageComparator().compare(lhs, rhs);
+    }
+
+    @Benchmark
+    public ImageComparatorResult compareCropped() {
+        return new XorImageComparator(true).compare(lhs, rhs);
+    }
+
+    @Benchmark
+    public ImageComparatorResult compareVerdict() {
+        return new XorVerdictImageComparator().compare(lhs, rhs);
+    }
+
+    @Benchmark
+    public ImageComparatorResult compareBilevel() {
+        return new BilevelImageComparator().compare(lhs, rhs);
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.benchmark;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.github.jipsg.pdfbox.PDDocumentFactory;
+import org.github.jipsg.pdfbox.PdfToImageConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time to render PDF documents at different resolutions and
+ * color models.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class PdfToImageConverterBenchmark {
+
+    @Param({"open-office-01.pdf", "multi-page-01.pdf"})
+    public String document;
+
+    @Param({"72", "150", "300"})
+    public int resolution;
+
+    @Param({"rgb", "gray", "bilevel"})
+    public String color;
+
+    private PDDocument pdDocument;
+    private List<PDPage> pageList;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() throws Exception {
+        pdDocument = new PDDocumentFactory().create(BenchmarkDocuments.getPdfFile(document));
+        pageList = pdDocument.getDocumentCatalog().getAllPages();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        pdDocument.close();
+    }
+
+    @Benchmark
+    public BufferedImage toImage() throws Exception {
+        return new PdfToImageConverter().toImage(pageList.get(0), resolution, color);
+    }
+
+    @Benchmark
+    public List<BufferedImage> toImages() throws Exception {
+        return new PdfToImageConverter().toImages(BenchmarkDocuments.getPdfFile(document), "png", 1, Byte.MAX_VALUE, resolution, color);
+    }
+}
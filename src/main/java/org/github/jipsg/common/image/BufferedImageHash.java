@@ -0,0 +1,107 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.image;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Creates compact perceptual hashes of images which can be stored and compared
+ * cheaply to detect gross differences without a pixel-by-pixel comparison.
+ */
+public class BufferedImageHash {
+
+    private static final int HASH_WIDTH = 9;
+    private static final int HASH_HEIGHT = 8;
+
+    /**
+     * Calculate the "difference hash" (dHash) of an image - the image is reduced
+     * to 9x8 grayscale cells using the average luminance of each cell and every
+     * bit of the hash tells if a cell is brighter than its right neighbour.
+     *
+     * @param bufferedImage the image
+     * @return the 64 bit hash
+     */
+    public static long dHash(BufferedImage bufferedImage) {
+
+        assert bufferedImage != null : "No bufferedImage provided";
+
+        int width = bufferedImage.getWidth();
+        int height = bufferedImage.getHeight();
+        long[] luminanceSums = new long[HASH_WIDTH * HASH_HEIGHT];
+        long[] pixelCounts = new long[HASH_WIDTH * HASH_HEIGHT];
+        int[] cellIndices = new int[width];
+        int[] row = new int[width];
+
+        for (int x = 0; x < width; x++) {
+            cellIndices[x] = (int) ((long) x * HASH_WIDTH / width);
+        }
+
+        for (int y = 0; y < height; y++) {
+            int cellRowIndex = (int) ((long) y * HASH_HEIGHT / height) * HASH_WIDTH;
+            bufferedImage.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                int rgb = row[x];
+                int cellIndex = cellRowIndex + cellIndices[x];
+                luminanceSums[cellIndex] += ((rgb >> 16) & 0xFF) * 299 + ((rgb >> 8) & 0xFF) * 587 + (rgb & 0xFF) * 114;
+                pixelCounts[cellIndex]++;
+            }
+        }
+
+        long result = 0;
+
+        for (int cellY = 0; cellY < HASH_HEIGHT; cellY++) {
+            for (int cellX = 0; cellX < HASH_WIDTH - 1; cellX++) {
+                int cellIndex = cellY * HASH_WIDTH + cellX;
+                long luminance = getAverage(luminanceSums[cellIndex], pixelCounts[cellIndex]);
+                long rightLuminance = getAverage(luminanceSums[cellIndex + 1], pixelCounts[cellIndex + 1]);
+                result = (result << 1) | (luminance > rightLuminance ? 1 : 0);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Get the number of different bits of two hashes.
+     *
+     * @param hash1 the first hash
+     * @param hash2 the second hash
+     * @return the distance between 0 (identical) and 64
+     */
+    public static int distance(long hash1, long hash2) {
+        return Long.bitCount(hash1 ^ hash2);
+    }
+
+    /**
+     * Convert a hash into a fixed-length hex string, e.g. to persist it.
+     */
+    public static String toHexString(long hash) {
+        String hexString = Long.toHexString(hash);
+        return "0000000000000000".substring(hexString.length()) + hexString;
+    }
+
+    /**
+     * Parse a hash created by "toHexString".
+     */
+    public static long parseHexString(String hexString) {
+        return Long.parseUnsignedLong(hexString, 16);
+    }
+
+    private static long getAverage(long sum, long count) {
+        return (count > 0 ? sum / count : 0);
+    }
+}
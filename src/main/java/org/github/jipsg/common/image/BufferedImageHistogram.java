@@ -16,42 +16,52 @@
  */
 package org.github.jipsg.common.image;
 
-import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
- * Creates a RGB value histogram for an image.
+ * Creates a RGB value histogram for an image. The pixels are read row by row
+ * without per-pixel allocation and large images are split into bands of rows
+ * which are counted in parallel using fork-join.
  */
 public class BufferedImageHistogram {
 
+    /**
+     * Images with more pixels are counted in parallel
+     */
+    private static final int PARALLEL_THRESHOLD_PIXELS = 1 << 20;
+
+    /**
+     * The approximate number of pixels counted by a single fork-join task
+     */
+    private static final int BAND_SIZE_PIXELS = 1 << 18;
+
     private final int SIZE = 256;
     private int nrOfPixels;
-    private int[] red = new int[SIZE];
-    private int[] green = new int[SIZE];
-    private int[] blue = new int[SIZE];
+    private int[] red;
+    private int[] green;
+    private int[] blue;
 
     public BufferedImageHistogram(BufferedImage bufferedImage) {
 
         assert bufferedImage != null : "No bufferedImage provided";
 
-        for (int i = 0; i < red.length; i++) red[i] = 0;
-        for (int i = 0; i < green.length; i++) green[i] = 0;
-        for (int i = 0; i < blue.length; i++) blue[i] = 0;
-
-        for (int i = 0; i < bufferedImage.getWidth(); i++) {
-            for (int j = 0; j < bufferedImage.getHeight(); j++) {
+        int width = bufferedImage.getWidth();
+        int height = bufferedImage.getHeight();
+        RowBandTask rowBandTask = new RowBandTask(bufferedImage, 0, height, Math.max(1, BAND_SIZE_PIXELS / width));
 
-                int redIndex = new Color(bufferedImage.getRGB(i, j)).getRed();
-                int greenIndex = new Color(bufferedImage.getRGB(i, j)).getGreen();
-                int blueIndex = new Color(bufferedImage.getRGB(i, j)).getBlue();
-
-                red[redIndex]++;
-                green[greenIndex]++;
-                blue[blueIndex]++;
-            }
+        if ((long) width * height > PARALLEL_THRESHOLD_PIXELS) {
+            ForkJoinPool.commonPool().invoke(rowBandTask);
+        } else {
+            rowBandTask.compute();
         }
 
-        nrOfPixels = bufferedImage.getHeight() * bufferedImage.getWidth();
+        red = rowBandTask.red;
+        green = rowBandTask.green;
+        blue = rowBandTask.blue;
+
+        nrOfPixels = height * width;
     }
 
     public int[] getRed() {
@@ -97,4 +107,65 @@ public class BufferedImageHistogram {
 
         return redHighValues == getNrOfPixels() && greenHighValues == getNrOfPixels() && blueHighValues == getNrOfPixels();
     }
+
+    /**
+     * Counts the channel values of a band of rows and splits the band
+     * recursively when it contains too many rows.
+     */
+    private static class RowBandTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final BufferedImage bufferedImage;
+        private final int startRow;
+        private final int endRow;
+        private final int maxRows;
+        private final int[] red = new int[256];
+        private final int[] green = new int[256];
+        private final int[] blue = new int[256];
+
+        RowBandTask(BufferedImage bufferedImage, int startRow, int endRow, int maxRows) {
+            this.bufferedImage = bufferedImage;
+            this.startRow = startRow;
+            this.endRow = endRow;
+            this.maxRows = maxRows;
+        }
+
+        @Override
+        protected void compute() {
+            if (endRow - startRow > maxRows) {
+                int middleRow = (startRow + endRow) >>> 1;
+                RowBandTask upperBand = new RowBandTask(bufferedImage, startRow, middleRow, maxRows);
+                RowBandTask lowerBand = new RowBandTask(bufferedImage, middleRow, endRow, maxRows);
+                invokeAll(upperBand, lowerBand);
+                merge(upperBand);
+                merge(lowerBand);
+            } else {
+                count();
+            }
+        }
+
+        private void count() {
+            int width = bufferedImage.getWidth();
+            int[] row = new int[width];
+
+            for (int y = startRow; y < endRow; y++) {
+                bufferedImage.getRGB(0, y, width, 1, row, 0, width);
+                for (int x = 0; x < width; x++) {
+                    int rgb = row[x];
+                    red[(rgb >> 16) & 0xFF]++;
+                    green[(rgb >> 8) & 0xFF]++;
+                    blue[rgb & 0xFF]++;
+                }
+            }
+        }
+
+        private void merge(RowBandTask other) {
+            for (int i = 0; i < red.length; i++) {
+                red[i] += other.red[i];
+                green[i] += other.green[i];
+                blue[i] += other.blue[i];
+            }
+        }
+    }
 }
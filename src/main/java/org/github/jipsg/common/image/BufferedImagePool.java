@@ -0,0 +1,192 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Pool of images keyed by their width, height and type to reuse the large
+ * rasters of rendered pages and diff images instead of allocating them for
+ * every page. The content of a borrowed image is undefined and must be
+ * overwritten by the caller. Images must only be released when they are
+ * no longer used, i.e. not kept in a result or cache.
+ */
+public class BufferedImagePool {
+
+    /**
+     * The maximum number of images kept in the pool
+     */
+    private final int maxNrOfImages;
+
+    /**
+     * The pooled images
+     */
+    private final Map<Key, ArrayDeque<BufferedImage>> imageMap;
+
+    private int nrOfImages;
+    private long nrOfHits;
+    private long nrOfMisses;
+
+    public BufferedImagePool(int maxNrOfImages) {
+        assert maxNrOfImages > 0 : "invalid maximum number of images : " + maxNrOfImages;
+        this.maxNrOfImages = maxNrOfImages;
+        this.imageMap = new HashMap<Key, ArrayDeque<BufferedImage>>();
+    }
+
+    /**
+     * Get a pooled image or create a new one.
+     *
+     * @param width  the width of the image
+     * @param height the height of the image
+     * @param type   the predefined image type, e.g. "BufferedImage.TYPE_INT_RGB"
+     * @return the image with undefined content
+     */
+    public BufferedImage borrow(int width, int height, int type) {
+        assert type != BufferedImage.TYPE_CUSTOM : "custom image types are not supported";
+
+        synchronized (this) {
+            ArrayDeque<BufferedImage> imageDeque = imageMap.get(new Key(width, height, type));
+            if (imageDeque != null && !imageDeque.isEmpty()) {
+                nrOfImages--;
+                nrOfHits++;
+                return imageDeque.pop();
+            }
+            nrOfMisses++;
+        }
+
+        return new BufferedImage(width, height, type);
+    }
+
+    /**
+     * Return an image to the pool which is dropped if the pool is full or the
+     * image is not compatible with a newly created image of the same type.
+     *
+     * @param bufferedImage the image or null
+     */
+    public void release(BufferedImage bufferedImage) {
+        if (bufferedImage == null || !isPoolable(bufferedImage)) {
+            return;
+        }
+
+        synchronized (this) {
+            if (nrOfImages < maxNrOfImages) {
+                Key key = new Key(bufferedImage.getWidth(), bufferedImage.getHeight(), bufferedImage.getType());
+                ArrayDeque<BufferedImage> imageDeque = imageMap.get(key);
+                if (imageDeque == null) {
+                    imageDeque = new ArrayDeque<BufferedImage>();
+                    imageMap.put(key, imageDeque);
+                }
+                imageDeque.push(bufferedImage);
+                nrOfImages++;
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return nrOfImages;
+    }
+
+    public synchronized long getNrOfHits() {
+        return nrOfHits;
+    }
+
+    public synchronized long getNrOfMisses() {
+        return nrOfMisses;
+    }
+
+    public synchronized void clear() {
+        imageMap.clear();
+        nrOfImages = 0;
+    }
+
+    /**
+     * Sub-images and images with a custom palette can't be borrowed as a new image.
+     */
+    private static boolean isPoolable(BufferedImage bufferedImage) {
+        if (bufferedImage.getType() == BufferedImage.TYPE_CUSTOM || bufferedImage.getRaster().getParent() != null) {
+            return false;
+        }
+
+        if (bufferedImage.getColorModel() instanceof IndexColorModel) {
+            IndexColorModel colorModel = (IndexColorModel) bufferedImage.getColorModel();
+            IndexColorModel defaultColorModel = (IndexColorModel) new BufferedImage(1, 1, bufferedImage.getType()).getColorModel();
+            return colorModel.getMapSize() == defaultColorModel.getMapSize() && Arrays.equals(getRGBs(colorModel), getRGBs(defaultColorModel));
+        }
+
+        return true;
+    }
+
+    private static int[] getRGBs(IndexColorModel colorModel) {
+        int[] result = new int[colorModel.getMapSize()];
+        colorModel.getRGBs(result);
+        return result;
+    }
+
+    @Override
+    public synchronized String toString() {
+        final StringBuilder sb = new StringBuilder("BufferedImagePool{");
+        sb.append("size=").append(nrOfImages);
+        sb.append(", maxNrOfImages=").append(maxNrOfImages);
+        sb.append(", nrOfHits=").append(nrOfHits);
+        sb.append(", nrOfMisses=").append(nrOfMisses);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    /**
+     * Identifies compatible images.
+     */
+    private static class Key {
+
+        private final int width;
+        private final int height;
+        private final int type;
+
+        Key(int width, int height, int type) {
+            this.width = width;
+            this.height = height;
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return width == key.width
+                    && height == key.height
+                    && type == key.type;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = width;
+            result = 31 * result + height;
+            result = 31 * result + type;
+            return result;
+        }
+    }
+}
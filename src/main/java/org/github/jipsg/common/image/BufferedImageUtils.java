@@ -24,9 +24,15 @@ package org.github.jipsg.common.image;
  * To change this template use File | Settings | File Templates.
  */
 
+import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
 
 /**
  * Contains ready-to use image operations without additional dependencies.
@@ -42,4 +48,64 @@ public class BufferedImageUtils {
         file.getParentFile().mkdirs();
         return ImageIO.write(bufferedImage, formatName, file);
     }
-}
\ No newline at end of file
+
+    /**
+     * Write an image using an explicit compression quality if supported by the
+     * image writer, e.g. a high quality results in less compression and faster
+     * encoding of PNG images. Please note that the PNG writer of the JDK supports
+     * a compression quality only since Java 9 - on Java 8 the quality is ignored
+     * and the image is written using the default compression.
+     *
+     * @param bufferedImage      the image to write
+     * @param formatName         the format, e.g. "png"
+     * @param file               the file to write
+     * @param compressionQuality the compression quality between 0 and 1 or a negative value for the default
+     * @return false if no image writer was found
+     * @throws Exception writing the image failed
+     */
+    public static boolean writeBufferedImage(BufferedImage bufferedImage, String formatName, File file, float compressionQuality) throws Exception {
+
+        assert bufferedImage != null : "bufferedImage is null";
+        assert formatName != null : "formatName is null";
+        assert file != null : "file is null";
+        assert compressionQuality <= 1.0f : "invalid compressionQuality : " + compressionQuality;
+
+        if (compressionQuality < 0) {
+            return writeBufferedImage(bufferedImage, formatName, file);
+        }
+
+        Iterator<ImageWriter> imageWriters = ImageIO.getImageWritersByFormatName(formatName);
+
+        if (!imageWriters.hasNext()) {
+            return false;
+        }
+
+        ImageWriter imageWriter = imageWriters.next();
+        ImageWriteParam imageWriteParam = imageWriter.getDefaultWriteParam();
+
+        if (imageWriteParam.canWriteCompressed()) {
+            imageWriteParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            imageWriteParam.setCompressionQuality(compressionQuality);
+        }
+
+        file.getParentFile().mkdirs();
+
+        // an existing file would not be truncated by the image output stream
+
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Unable to delete the existing file : " + file.getAbsolutePath());
+        }
+
+        ImageOutputStream imageOutputStream = ImageIO.createImageOutputStream(file);
+
+        try {
+            imageWriter.setOutput(imageOutputStream);
+            imageWriter.write(null, new IIOImage(bufferedImage, null, null), imageWriteParam);
+        } finally {
+            imageWriter.dispose();
+            imageOutputStream.close();
+        }
+
+        return true;
+    }
+}
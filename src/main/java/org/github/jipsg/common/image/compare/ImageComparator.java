@@ -19,7 +19,9 @@ package org.github.jipsg.common.image.compare;
 import java.awt.image.BufferedImage;
 
 /**
- * Compares two images.
+ * Compares two images. Implementations should describe the settings affecting
+ * their verdicts in "toString" since it identifies stored verdicts, e.g. in a
+ * "PdfDocumentComparatorManifest".
  */
 public interface ImageComparator {
 
@@ -16,6 +16,9 @@
  */
 package org.github.jipsg.common.image.compare;
 
+import org.github.jipsg.common.image.BufferedImageHash;
+
+import java.awt.*;
 import java.awt.image.BufferedImage;
 
 /**
@@ -29,13 +32,41 @@ public class ImageComparatorResult {
     private boolean isIdentical;
 
     /**
-     * The generated diff between the two images for visual inspection
+     * The generated diff between the two images for visual inspection - might
+     * be null if the comparator does not create diff images
      */
     private BufferedImage bufferedImage;
 
+    /**
+     * The location of the diff image within the compared images, e.g. when
+     * the diff image is cropped to the bounding box of the differences
+     */
+    private Point offset;
+
+    /**
+     * The perceptual hashes of the compared images if calculated
+     */
+    private boolean hasPerceptualHashes;
+    private long lhsPerceptualHash;
+    private long rhsPerceptualHash;
+
     public ImageComparatorResult(boolean isIdentical, BufferedImage bufferedImage) {
+        this(isIdentical, bufferedImage, new Point(0, 0));
+    }
+
+    public ImageComparatorResult(boolean isIdentical, BufferedImage bufferedImage, Point offset) {
+        assert offset != null : "No offset provided";
         this.isIdentical = isIdentical;
         this.bufferedImage = bufferedImage;
+        this.offset = offset;
+        this.hasPerceptualHashes = false;
+    }
+
+    public ImageComparatorResult(ImageComparatorResult other, long lhsPerceptualHash, long rhsPerceptualHash) {
+        this(other.isIdentical, other.bufferedImage, other.offset);
+        this.hasPerceptualHashes = true;
+        this.lhsPerceptualHash = lhsPerceptualHash;
+        this.rhsPerceptualHash = rhsPerceptualHash;
     }
 
     public boolean isIdentical() {
@@ -46,11 +77,36 @@ public class ImageComparatorResult {
         return bufferedImage;
     }
 
+    public Point getOffset() {
+        return offset;
+    }
+
+    public boolean hasBufferedImage() {
+        return bufferedImage != null;
+    }
+
+    public boolean hasPerceptualHashes() {
+        return hasPerceptualHashes;
+    }
+
+    public long getLhsPerceptualHash() {
+        return lhsPerceptualHash;
+    }
+
+    public long getRhsPerceptualHash() {
+        return rhsPerceptualHash;
+    }
+
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder("ImageDifferResult{");
         sb.append(", isIdentical=").append(isIdentical);
         sb.append(", bufferedImage=").append(bufferedImage);
+        sb.append(", offset=").append(offset);
+        if (hasPerceptualHashes) {
+            sb.append(", lhsPerceptualHash=").append(BufferedImageHash.toHexString(lhsPerceptualHash));
+            sb.append(", rhsPerceptualHash=").append(BufferedImageHash.toHexString(rhsPerceptualHash));
+        }
         sb.append('}');
         return sb.toString();
     }
@@ -0,0 +1,191 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.image.compare.impl;
+
+import org.github.jipsg.common.image.compare.ImageComparator;
+import org.github.jipsg.common.image.compare.ImageComparatorResult;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.nio.ByteBuffer;
+
+/**
+ * Compares bilevel images, e.g. pages rendered with the "bilevel" color, directly
+ * on their packed 1-bit rasters by XOR-ing 64 pixels at a time and counting the
+ * different pixels using "Long.bitCount". The diff image is bilevel as well showing
+ * the different pixels in red - identical images have no diff image at all. All
+ * other images are passed to the fallback comparator.
+ */
+public class BilevelImageComparator implements ImageComparator {
+
+    /**
+     * Maps the XOR-ed bits to white for identical and to red for different pixels
+     */
+    private static final IndexColorModel DIFF_COLOR_MODEL = new IndexColorModel(1, 2,
+            new byte[]{(byte) 0xFF, (byte) 0xFF},
+            new byte[]{(byte) 0xFF, (byte) 0x00},
+            new byte[]{(byte) 0xFF, (byte) 0x00});
+
+    /**
+     * The comparator used for images not being bilevel
+     */
+    private final ImageComparator imageComparator;
+
+    public BilevelImageComparator() {
+        this(new XorImageComparator());
+    }
+
+    public BilevelImageComparator(ImageComparator imageComparator) {
+        assert imageComparator != null : "No imageComparator provided";
+        this.imageComparator = imageComparator;
+    }
+
+    @Override
+    public ImageComparatorResult compare(BufferedImage lhs, BufferedImage rhs) {
+        if (!isBilevelImage(lhs) || !isBilevelImage(rhs)
+                || lhs.getWidth() != rhs.getWidth()
+                || lhs.getHeight() != rhs.getHeight()
+                || getScanlineStride(lhs) != getScanlineStride(rhs)) {
+            return imageComparator.compare(lhs, rhs);
+        }
+
+        BufferedImage diffImage = diffImages(lhs, rhs);
+        return new ImageComparatorResult(diffImage == null, diffImage);
+    }
+
+    /**
+     * Count the different pixels of two bilevel images having the same size.
+     *
+     * @param lhs the first image
+     * @param rhs the second image
+     * @return the number of different pixels
+     */
+    public static long getNrOfDifferentPixels(BufferedImage lhs, BufferedImage rhs) {
+        assert isBilevelImage(lhs) && isBilevelImage(rhs) : "Only bilevel images are supported";
+        assert lhs.getWidth() == rhs.getWidth() && lhs.getHeight() == rhs.getHeight() : "Different image sizes";
+
+        ByteBuffer lhsBuffer = ByteBuffer.wrap(getBytes(lhs));
+        ByteBuffer rhsBuffer = ByteBuffer.wrap(getBytes(rhs));
+        int scanlineStride = getScanlineStride(lhs);
+        int nrOfFullBytes = lhs.getWidth() / 8;
+        int partialByteMask = getPartialByteMask(lhs.getWidth());
+        long result = 0;
+
+        for (int y = 0; y < lhs.getHeight(); y++) {
+            int rowOffset = y * scanlineStride;
+            int x = 0;
+            for (; x + 8 <= nrOfFullBytes; x += 8) {
+                result += Long.bitCount(lhsBuffer.getLong(rowOffset + x) ^ rhsBuffer.getLong(rowOffset + x));
+            }
+            for (; x < scanlineStride; x++) {
+                int mask = (x < nrOfFullBytes ? 0xFF : (x == nrOfFullBytes ? partialByteMask : 0));
+                result += Integer.bitCount((lhsBuffer.get(rowOffset + x) ^ rhsBuffer.get(rowOffset + x)) & mask);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * XOR the packed rows where the diff image is only created for the first difference.
+     */
+    private static BufferedImage diffImages(BufferedImage lhs, BufferedImage rhs) {
+        BufferedImage result = null;
+        ByteBuffer diffBuffer = null;
+        ByteBuffer lhsBuffer = ByteBuffer.wrap(getBytes(lhs));
+        ByteBuffer rhsBuffer = ByteBuffer.wrap(getBytes(rhs));
+        int scanlineStride = getScanlineStride(lhs);
+        int nrOfFullBytes = lhs.getWidth() / 8;
+        int partialByteMask = getPartialByteMask(lhs.getWidth());
+
+        for (int y = 0; y < lhs.getHeight(); y++) {
+            int rowOffset = y * scanlineStride;
+            int x = 0;
+            for (; x + 8 <= nrOfFullBytes; x += 8) {
+                long xor = lhsBuffer.getLong(rowOffset + x) ^ rhsBuffer.getLong(rowOffset + x);
+                if (xor != 0) {
+                    if (diffBuffer == null) {
+                        result = createDiffImage(lhs.getWidth(), lhs.getHeight());
+                        diffBuffer = ByteBuffer.wrap(getBytes(result));
+                    }
+                    diffBuffer.putLong(rowOffset + x, xor);
+                }
+            }
+            for (; x < scanlineStride; x++) {
+                int mask = (x < nrOfFullBytes ? 0xFF : (x == nrOfFullBytes ? partialByteMask : 0));
+                int xor = (lhsBuffer.get(rowOffset + x) ^ rhsBuffer.get(rowOffset + x)) & mask;
+                if (xor != 0) {
+                    if (diffBuffer == null) {
+                        result = createDiffImage(lhs.getWidth(), lhs.getHeight());
+                        diffBuffer = ByteBuffer.wrap(getBytes(result));
+                    }
+                    diffBuffer.put(rowOffset + x, (byte) xor);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private static BufferedImage createDiffImage(int width, int height) {
+        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY, DIFF_COLOR_MODEL);
+        assert getScanlineStride(result) == (width + 7) / 8 : "Unexpected scanline stride";
+        return result;
+    }
+
+    /**
+     * The rows are compared in words of eight bytes as long as all their bits are
+     * pixels - only the used bits of a trailing byte with padding are compared.
+     */
+    private static int getPartialByteMask(int width) {
+        return (0xFF << (8 - width % 8)) & 0xFF;
+    }
+
+    private static boolean isBilevelImage(BufferedImage bufferedImage) {
+        WritableRaster raster = bufferedImage.getRaster();
+        return bufferedImage.getType() == BufferedImage.TYPE_BYTE_BINARY
+                && raster.getSampleModel() instanceof MultiPixelPackedSampleModel
+                && ((MultiPixelPackedSampleModel) raster.getSampleModel()).getPixelBitStride() == 1
+                && ((MultiPixelPackedSampleModel) raster.getSampleModel()).getDataBitOffset() == 0
+                && raster.getDataBuffer() instanceof DataBufferByte
+                && raster.getDataBuffer().getOffset() == 0
+                && raster.getSampleModelTranslateX() == 0
+                && raster.getSampleModelTranslateY() == 0;
+    }
+
+    private static int getScanlineStride(BufferedImage bufferedImage) {
+        return ((MultiPixelPackedSampleModel) bufferedImage.getRaster().getSampleModel()).getScanlineStride();
+    }
+
+    private static byte[] getBytes(BufferedImage bufferedImage) {
+        return ((DataBufferByte) bufferedImage.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * Describes the settings affecting the verdict.
+     */
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("BilevelImageComparator{");
+        sb.append("imageComparator=").append(imageComparator);
+        sb.append('}');
+        return sb.toString();
+    }
+}
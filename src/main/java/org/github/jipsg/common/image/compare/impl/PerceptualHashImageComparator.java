@@ -0,0 +1,76 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.image.compare.impl;
+
+import org.github.jipsg.common.image.BufferedImageHash;
+import org.github.jipsg.common.image.compare.ImageComparator;
+import org.github.jipsg.common.image.compare.ImageComparatorResult;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Calculates the perceptual hashes of both images and stores them in the
+ * result. Images whose hashes differ by more than the given distance are
+ * reported as different right away, all others are passed to the
+ * full-resolution comparator.
+ */
+public class PerceptualHashImageComparator implements ImageComparator {
+
+    /**
+     * The comparator for images with similar hashes
+     */
+    private final ImageComparator imageComparator;
+
+    /**
+     * The maximum number of different hash bits before skipping the full comparison
+     */
+    private final int maxDistance;
+
+    public PerceptualHashImageComparator(ImageComparator imageComparator, int maxDistance) {
+        assert imageComparator != null : "No imageComparator provided";
+        assert maxDistance >= 0 : "invalid maximum distance : " + maxDistance;
+        this.imageComparator = imageComparator;
+        this.maxDistance = maxDistance;
+    }
+
+    @Override
+    public ImageComparatorResult compare(BufferedImage lhs, BufferedImage rhs) {
+        long lhsHash = BufferedImageHash.dHash(lhs);
+        long rhsHash = BufferedImageHash.dHash(rhs);
+        ImageComparatorResult result;
+
+        if (BufferedImageHash.distance(lhsHash, rhsHash) > maxDistance) {
+            result = new ImageComparatorResult(false, null);
+        } else {
+            result = imageComparator.compare(lhs, rhs);
+        }
+
+        return new ImageComparatorResult(result, lhsHash, rhsHash);
+    }
+
+    /**
+     * Describes the settings affecting the verdict.
+     */
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("PerceptualHashImageComparator{");
+        sb.append("maxDistance=").append(maxDistance);
+        sb.append(", imageComparator=").append(imageComparator);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -17,21 +17,127 @@
 package org.github.jipsg.common.image.compare.impl;
 
 import org.github.jipsg.common.image.BufferedImageHistogram;
+import org.github.jipsg.common.image.BufferedImagePool;
 import org.github.jipsg.common.image.compare.ImageComparator;
 import org.github.jipsg.common.image.compare.ImageComparatorResult;
 import org.github.jipsg.common.image.diff.impl.XorImageDiffer;
+import org.github.jipsg.common.metrics.Metrics;
+import org.github.jipsg.common.metrics.NoopMetrics;
 
+import java.awt.*;
 import java.awt.image.BufferedImage;
 
 /**
  * Created by sgoeschl on 25/12/14.
  */
 public class XorImageComparator implements ImageComparator {
+
+    /**
+     * Only keep the bounding box of the differences instead of a full-page diff image
+     */
+    private final boolean cropToDifferences;
+
+    /**
+     * Diff large images in tiles processed in parallel
+     */
+    private final boolean parallel;
+
+    /**
+     * Optional pool to borrow the diff images from
+     */
+    private final BufferedImagePool bufferedImagePool;
+
+    public XorImageComparator() {
+        this(false);
+    }
+
+    public XorImageComparator(boolean cropToDifferences) {
+        this(cropToDifferences, false);
+    }
+
+    public XorImageComparator(boolean cropToDifferences, boolean parallel) {
+        this(cropToDifferences, parallel, null);
+    }
+
+    public XorImageComparator(boolean cropToDifferences, boolean parallel, BufferedImagePool bufferedImagePool) {
+        this.cropToDifferences = cropToDifferences;
+        this.parallel = parallel;
+        this.bufferedImagePool = bufferedImagePool;
+    }
+
     @Override
     public ImageComparatorResult compare(BufferedImage lhs, BufferedImage rhs) {
-        BufferedImage diffBufferedImage = new XorImageDiffer().diff(lhs, rhs);
-        BufferedImageHistogram diffBufferedImageHistogram = new BufferedImageHistogram(diffBufferedImage);
-        boolean isIdentical = diffBufferedImageHistogram.isWhite(1);
+        return compare(lhs, rhs, NoopMetrics.INSTANCE);
+    }
+
+    /**
+     * Compare two images while recording the timers "diff" and "histogram"
+     * to tell the XOR diff apart from the histogram of the diff image.
+     *
+     * @param lhs     the first image
+     * @param rhs     the second image
+     * @param metrics the metrics recording the phases of the comparison
+     * @return the result of the comparison
+     */
+    public ImageComparatorResult compare(BufferedImage lhs, BufferedImage rhs, Metrics metrics) {
+        assert metrics != null : "No metrics provided";
+
+        if (cropToDifferences) {
+            return compareCropped(lhs, rhs, metrics);
+        }
+
+        BufferedImage diffBufferedImage;
+        long startTime = metrics.startTimer();
+
+        try {
+            diffBufferedImage = new XorImageDiffer(parallel, bufferedImagePool).diff(lhs, rhs);
+        } finally {
+            metrics.stopTimer("diff", startTime);
+        }
+
+        boolean isIdentical;
+        startTime = metrics.startTimer();
+
+        try {
+            BufferedImageHistogram diffBufferedImageHistogram = new BufferedImageHistogram(diffBufferedImage);
+            isIdentical = diffBufferedImageHistogram.isWhite(1);
+        } finally {
+            metrics.stopTimer("histogram", startTime);
+        }
+
         return new ImageComparatorResult(isIdentical, diffBufferedImage);
     }
+
+    /**
+     * Create a diff image only for the bounding box of the changed pixels -
+     * identical images have no diff image at all and no histogram is needed.
+     */
+    private ImageComparatorResult compareCropped(BufferedImage lhs, BufferedImage rhs, Metrics metrics) {
+        long startTime = metrics.startTimer();
+
+        try {
+            XorImageDiffer imageDiffer = new XorImageDiffer(parallel, bufferedImagePool);
+            Rectangle differenceBounds = imageDiffer.getDifferenceBounds(lhs, rhs, 1);
+
+            if (differenceBounds == null) {
+                return new ImageComparatorResult(true, null);
+            }
+
+            BufferedImage diffBufferedImage = imageDiffer.diffImages(lhs, rhs, 1, differenceBounds);
+            return new ImageComparatorResult(false, diffBufferedImage, differenceBounds.getLocation());
+        } finally {
+            metrics.stopTimer("diff", startTime);
+        }
+    }
+
+    /**
+     * Describes the settings affecting the verdict.
+     */
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("XorImageComparator{");
+        sb.append("cropToDifferences=").append(cropToDifferences);
+        sb.append('}');
+        return sb.toString();
+    }
 }
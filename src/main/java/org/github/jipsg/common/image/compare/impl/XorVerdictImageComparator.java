@@ -0,0 +1,61 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.image.compare.impl;
+
+import org.github.jipsg.common.image.compare.ImageComparator;
+import org.github.jipsg.common.image.compare.ImageComparatorResult;
+import org.github.jipsg.common.image.diff.impl.XorImageDiffer;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Only checks if two images are identical without creating a diff image,
+ * e.g. for gating builds where the diff images are not inspected. The
+ * comparison stops at the first different pixel.
+ */
+public class XorVerdictImageComparator implements ImageComparator {
+
+    /**
+     * The number of color steps to be considered equal
+     */
+    private final int colorStepDifferenceThreshold;
+
+    public XorVerdictImageComparator() {
+        this(1);
+    }
+
+    public XorVerdictImageComparator(int colorStepDifferenceThreshold) {
+        this.colorStepDifferenceThreshold = colorStepDifferenceThreshold;
+    }
+
+    @Override
+    public ImageComparatorResult compare(BufferedImage lhs, BufferedImage rhs) {
+        boolean isIdentical = new XorImageDiffer().isIdentical(lhs, rhs, colorStepDifferenceThreshold);
+        return new ImageComparatorResult(isIdentical, null);
+    }
+
+    /**
+     * Describes the settings affecting the verdict.
+     */
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("XorVerdictImageComparator{");
+        sb.append("colorStepDifferenceThreshold=").append(colorStepDifferenceThreshold);
+        sb.append('}');
+        return sb.toString();
+    }
+}
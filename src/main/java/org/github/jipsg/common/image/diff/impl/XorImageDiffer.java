@@ -16,23 +16,68 @@
  */
 package org.github.jipsg.common.image.diff.impl;
 
+import org.github.jipsg.common.image.BufferedImagePool;
 import org.github.jipsg.common.image.diff.ImageDiffer;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Compare two images to check if they are identical - based on Apache PDFBox test code.
  */
 public class XorImageDiffer implements ImageDiffer {
 
+    /**
+     * The width and height of the tiles processed in parallel
+     */
+    private static final int TILE_SIZE = 256;
+
+    /**
+     * Images with more pixels are processed in parallel if enabled
+     */
+    private static final int PARALLEL_THRESHOLD_PIXELS = 1 << 20;
+
     /**
      * The number of color steps to be considered equal when diffing two RGB images
      */
     private int colorStepDifferenceThreshold;
 
+    /**
+     * Diff large images in tiles processed in parallel using fork-join
+     */
+    private boolean parallel;
+
+    /**
+     * Optional pool to borrow the diff images from
+     */
+    private BufferedImagePool bufferedImagePool;
+
     public XorImageDiffer() {
+        this(false);
+    }
+
+    public XorImageDiffer(boolean parallel) {
+        this(parallel, null);
+    }
+
+    /**
+     * @param parallel          diff large images in tiles processed in parallel
+     * @param bufferedImagePool optional pool to borrow the diff images from - the
+     *                          caller owns the returned diff images and may release them
+     */
+    public XorImageDiffer(boolean parallel, BufferedImagePool bufferedImagePool) {
         this.colorStepDifferenceThreshold = 1;
+        this.parallel = parallel;
+        this.bufferedImagePool = bufferedImagePool;
     }
 
     @Override
@@ -59,72 +104,417 @@ public class XorImageDiffer implements ImageDiffer {
         int minHeight = Math.min(bim1.getHeight(), bim2.getHeight());
         int maxWidth = Math.max(bim1.getWidth(), bim2.getWidth());
         int maxHeight = Math.max(bim1.getHeight(), bim2.getHeight());
+        Rectangle region = new Rectangle(0, 0, maxWidth, maxHeight);
+
+        if (isParallel(minWidth, minHeight)) {
+            // the diff image is shared by all tiles and must exist up-front
+            result = createEmptyDiffImage(minWidth, minHeight, region, bufferedImagePool);
+            ForkJoinPool.commonPool().invoke(new DiffTileTask(bim1, bim2, threshold, result, region, createTiles(minWidth, minHeight)));
+            return result;
+        }
 
         if (minWidth != maxWidth || minHeight != maxHeight) {
-            result = createEmptyDiffImage(minWidth, minHeight, maxWidth, maxHeight);
+            result = createEmptyDiffImage(minWidth, minHeight, region, bufferedImagePool);
+        }
+
+        result = diffRegion(bim1, bim2, threshold, result, region, region, bufferedImagePool);
+
+        if (result == null) {
+            result = createEmpty(minWidth, minHeight);
+        }
+
+        return result;
+    }
+
+    /**
+     * Get the difference between two images only for the given region, e.g.
+     * the bounding box of the differences, to keep the diff image small.
+     *
+     * @param bim1      Buffered image
+     * @param bim2      Buffered image
+     * @param threshold the color steps difference to ne considered identical
+     * @param region    the region of the diff image to be created
+     * @return a diff image having the size of the region
+     */
+    public BufferedImage diffImages(BufferedImage bim1, BufferedImage bim2, int threshold, Rectangle region) {
+        int minWidth = Math.min(bim1.getWidth(), bim2.getWidth());
+        int minHeight = Math.min(bim1.getHeight(), bim2.getHeight());
+        BufferedImage result = createEmptyDiffImage(minWidth, minHeight, region, bufferedImagePool);
+        return diffRegion(bim1, bim2, threshold, result, region, region, bufferedImagePool);
+    }
+
+    /**
+     * Get the bounding box of all pixels exceeding the threshold including the
+     * border caused by images of different size.
+     *
+     * @param bim1      Buffered image
+     * @param bim2      Buffered image
+     * @param threshold the color steps difference to ne considered identical
+     * @return the bounding box or null if the images are identical
+     */
+    public Rectangle getDifferenceBounds(BufferedImage bim1, BufferedImage bim2, int threshold) {
+        Rectangle result = null;
+
+        int minWidth = Math.min(bim1.getWidth(), bim2.getWidth());
+        int minHeight = Math.min(bim1.getHeight(), bim2.getHeight());
+        int maxWidth = Math.max(bim1.getWidth(), bim2.getWidth());
+        int maxHeight = Math.max(bim1.getHeight(), bim2.getHeight());
+        boolean isIntRgb = isIntRgbImage(bim1) && isIntRgbImage(bim2);
+        int[] pixels1 = (isIntRgb ? getPixels(bim1) : null);
+        int[] pixels2 = (isIntRgb ? getPixels(bim2) : null);
+
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxX = -1;
+        int maxY = -1;
+
+        for (int y = 0; y < minHeight; ++y) {
+            int index1 = (isIntRgb ? getPixelIndex(bim1, 0, y) : 0);
+            int index2 = (isIntRgb ? getPixelIndex(bim2, 0, y) : 0);
+            for (int x = 0; x < minWidth; ++x, ++index1, ++index2) {
+                int rgb1 = (isIntRgb ? pixels1[index1] : bim1.getRGB(x, y));
+                int rgb2 = (isIntRgb ? pixels2[index2] : bim2.getRGB(x, y));
+                if (isDifferent(rgb1, rgb2, threshold)) {
+                    minX = Math.min(minX, x);
+                    maxX = Math.max(maxX, x);
+                    minY = Math.min(minY, y);
+                    maxY = y;
+                }
+            }
+        }
+
+        if (maxY >= 0) {
+            result = new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
         }
-        for (int x = 0; x < minWidth; ++x) {
-            for (int y = 0; y < minHeight; ++y) {
+
+        if (minWidth != maxWidth) {
+            result = union(result, new Rectangle(minWidth, 0, maxWidth - minWidth, maxHeight));
+        }
+
+        if (minHeight != maxHeight) {
+            result = union(result, new Rectangle(0, minHeight, maxWidth, maxHeight - minHeight));
+        }
+
+        return result;
+    }
+
+    /**
+     * Check if two images are identical in a single pass without creating a
+     * diff image - the check stops at the first different pixel.
+     *
+     * @param bim1      Buffered image
+     * @param bim2      Buffered image
+     * @param threshold the color steps difference to ne considered identical
+     * @return true if the images have the same size and no pixel exceeds the threshold
+     */
+    public boolean isIdentical(BufferedImage bim1, BufferedImage bim2, int threshold) {
+        if (bim1.getWidth() != bim2.getWidth() || bim1.getHeight() != bim2.getHeight()) {
+            return false;
+        }
+
+        int width = bim1.getWidth();
+        int height = bim1.getHeight();
+        AtomicBoolean isDifferent = new AtomicBoolean(false);
+
+        if (isParallel(width, height)) {
+            ForkJoinPool.commonPool().invoke(new CompareTileTask(bim1, bim2, threshold, isDifferent, createTiles(width, height)));
+        } else {
+            compareArea(bim1, bim2, threshold, isDifferent, new Rectangle(0, 0, width, height));
+        }
+
+        return !isDifferent.get();
+    }
+
+    /**
+     * Compare an area of two images of the same size and stop as soon as a
+     * difference was found - also by another thread.
+     */
+    private static void compareArea(BufferedImage bim1, BufferedImage bim2, int threshold, AtomicBoolean isDifferent, Rectangle area) {
+        int endX = area.x + area.width;
+        int endY = area.y + area.height;
+
+        if (isIntRgbImage(bim1) && isIntRgbImage(bim2)) {
+            int[] pixels1 = getPixels(bim1);
+            int[] pixels2 = getPixels(bim2);
+            for (int y = area.y; y < endY && !isDifferent.get(); ++y) {
+                int index1 = getPixelIndex(bim1, area.x, y);
+                int index2 = getPixelIndex(bim2, area.x, y);
+                for (int x = area.x; x < endX; ++x, ++index1, ++index2) {
+                    if (isDifferent(pixels1[index1], pixels2[index2], threshold)) {
+                        isDifferent.set(true);
+                        return;
+                    }
+                }
+            }
+        } else {
+            for (int y = area.y; y < endY && !isDifferent.get(); ++y) {
+                for (int x = area.x; x < endX; ++x) {
+                    if (isDifferent(bim1.getRGB(x, y), bim2.getRGB(x, y), threshold)) {
+                        isDifferent.set(true);
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Diff an area within the region covered by the diff image - the diff image
+     * is created lazily when no diff image is passed and the first difference
+     * is found.
+     */
+    private static BufferedImage diffRegion(BufferedImage bim1, BufferedImage bim2, int threshold, BufferedImage diffImage, Rectangle region, Rectangle area, BufferedImagePool pool) {
+        if (isIntRgbImage(bim1) && isIntRgbImage(bim2)) {
+            return diffIntRgbImages(bim1, bim2, threshold, diffImage, region, area, pool);
+        } else {
+            return diffGenericImages(bim1, bim2, threshold, diffImage, region, area, pool);
+        }
+    }
+
+    /**
+     * Diff two arbitrary images using the slow but generic "getRGB".
+     */
+    private static BufferedImage diffGenericImages(BufferedImage bim1, BufferedImage bim2, int threshold, BufferedImage diffImage, Rectangle region, Rectangle area, BufferedImagePool pool) {
+        BufferedImage result = diffImage;
+        int minWidth = Math.min(bim1.getWidth(), bim2.getWidth());
+        int minHeight = Math.min(bim1.getHeight(), bim2.getHeight());
+        int endX = Math.min(area.x + area.width, minWidth);
+        int endY = Math.min(area.y + area.height, minHeight);
+
+        for (int y = area.y; y < endY; ++y) {
+            for (int x = area.x; x < endX; ++x) {
                 int rgb1 = bim1.getRGB(x, y);
                 int rgb2 = bim2.getRGB(x, y);
-                if (rgb1 != rgb2
-                        // don't bother about differences of 1 color step
-                        && (Math.abs((rgb1 & 0xFF) - (rgb2 & 0xFF)) > threshold
-                        || Math.abs(((rgb1 >> 8) & 0xFF) - ((rgb2 >> 8) & 0xFF)) > threshold
-                        || Math.abs(((rgb1 >> 16) & 0xFF) - ((rgb2 >> 16) & 0xFF)) > threshold)) {
+                if (isDifferent(rgb1, rgb2, threshold)) {
                     if (result == null) {
-                        result = createEmptyDiffImage(minWidth, minHeight, maxWidth, maxHeight);
+                        result = createEmptyDiffImage(minWidth, minHeight, region, pool);
                     }
-                    int r = Math.abs((rgb1 & 0xFF) - (rgb2 & 0xFF));
-                    int g = Math.abs((rgb1 & 0xFF00) - (rgb2 & 0xFF00));
-                    int b = Math.abs((rgb1 & 0xFF0000) - (rgb2 & 0xFF0000));
-                    result.setRGB(x, y, 0xFFFFFF - (r | g | b));
+                    result.setRGB(x - region.x, y - region.y, diffColor(rgb1, rgb2));
                 } else {
                     if (result != null) {
-                        result.setRGB(x, y, Color.WHITE.getRGB());
+                        result.setRGB(x - region.x, y - region.y, Color.WHITE.getRGB());
                     }
                 }
             }
         }
 
-        if (result == null) {
-            result = createEmpty(minWidth, minHeight);
+        return result;
+    }
+
+    /**
+     * Diff two "TYPE_INT_RGB" images directly on the underlying pixel arrays in
+     * row-major order - the result is identical to "diffGenericImages".
+     */
+    private static BufferedImage diffIntRgbImages(BufferedImage bim1, BufferedImage bim2, int threshold, BufferedImage diffImage, Rectangle region, Rectangle area, BufferedImagePool pool) {
+        BufferedImage result = diffImage;
+        int minWidth = Math.min(bim1.getWidth(), bim2.getWidth());
+        int minHeight = Math.min(bim1.getHeight(), bim2.getHeight());
+        int endX = Math.min(area.x + area.width, minWidth);
+        int endY = Math.min(area.y + area.height, minHeight);
+        int[] pixels1 = getPixels(bim1);
+        int[] pixels2 = getPixels(bim2);
+        int[] resultPixels = (result != null ? getPixels(result) : null);
+
+        for (int y = area.y; y < endY; ++y) {
+            int index1 = getPixelIndex(bim1, area.x, y);
+            int index2 = getPixelIndex(bim2, area.x, y);
+            int resultIndex = (y - region.y) * region.width + (area.x - region.x);
+            for (int x = area.x; x < endX; ++x, ++index1, ++index2, ++resultIndex) {
+                int rgb1 = pixels1[index1];
+                int rgb2 = pixels2[index2];
+                if (isDifferent(rgb1, rgb2, threshold)) {
+                    if (resultPixels == null) {
+                        result = createEmptyDiffImage(minWidth, minHeight, region, pool);
+                        resultPixels = getPixels(result);
+                    }
+                    resultPixels[resultIndex] = diffColor(rgb1, rgb2);
+                }
+            }
         }
 
         return result;
     }
 
     /**
-     * Create an image; the part between the smaller and the larger image is
-     * painted black, the rest in white
+     * Don't bother about differences of a few color steps.
+     */
+    private static boolean isDifferent(int rgb1, int rgb2, int threshold) {
+        return rgb1 != rgb2
+                && (Math.abs((rgb1 & 0xFF) - (rgb2 & 0xFF)) > threshold
+                || Math.abs(((rgb1 >> 8) & 0xFF) - ((rgb2 >> 8) & 0xFF)) > threshold
+                || Math.abs(((rgb1 >> 16) & 0xFF) - ((rgb2 >> 16) & 0xFF)) > threshold);
+    }
+
+    private static int diffColor(int rgb1, int rgb2) {
+        int r = Math.abs((rgb1 & 0xFF) - (rgb2 & 0xFF));
+        int g = Math.abs((rgb1 & 0xFF00) - (rgb2 & 0xFF00));
+        int b = Math.abs((rgb1 & 0xFF0000) - (rgb2 & 0xFF0000));
+        return 0xFFFFFF - (r | g | b);
+    }
+
+    private static boolean isIntRgbImage(BufferedImage bufferedImage) {
+        return bufferedImage.getType() == BufferedImage.TYPE_INT_RGB
+                && bufferedImage.getRaster().getDataBuffer() instanceof DataBufferInt
+                && bufferedImage.getRaster().getSampleModel() instanceof SinglePixelPackedSampleModel;
+    }
+
+    private static int[] getPixels(BufferedImage bufferedImage) {
+        return ((DataBufferInt) bufferedImage.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * Get the index of a pixel within the pixel array also considering sub-images.
+     */
+    private static int getPixelIndex(BufferedImage bufferedImage, int x, int y) {
+        WritableRaster raster = bufferedImage.getRaster();
+        int scanlineStride = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+        int offset = raster.getDataBuffer().getOffset();
+        return offset + (y - raster.getSampleModelTranslateY()) * scanlineStride + (x - raster.getSampleModelTranslateX());
+    }
+
+    /**
+     * Create an image for the given region; the part between the smaller and
+     * the larger image is painted black, the rest in white
      *
      * @param minWidth  width of the smaller image
-     * @param minHeight width of the smaller image
-     * @param maxWidth  height of the larger image
-     * @param maxHeight height of the larger image
+     * @param minHeight height of the smaller image
+     * @param region    the region of the larger image covered by the diff image
+     * @param pool      optional pool to borrow the image from
      */
-    private BufferedImage createEmptyDiffImage(int minWidth, int minHeight, int maxWidth, int maxHeight) {
-        BufferedImage bim3 = new BufferedImage(maxWidth, maxHeight, BufferedImage.TYPE_INT_RGB);
-        Graphics graphics = bim3.getGraphics();
-        if (minWidth != maxWidth || minHeight != maxHeight) {
-            graphics.setColor(Color.BLACK);
-            graphics.fillRect(0, 0, maxWidth, maxHeight);
+    private static BufferedImage createEmptyDiffImage(int minWidth, int minHeight, Rectangle region, BufferedImagePool pool) {
+        BufferedImage bim3 = createRgbImage(region.width, region.height, pool);
+        int[] pixels = getPixels(bim3);
+        // a borrowed image has an undefined content so every pixel is written
+        int whiteWidth = Math.max(0, Math.min(minWidth - region.x, region.width));
+        int whiteHeight = Math.max(0, Math.min(minHeight - region.y, region.height));
+        for (int y = 0; y < region.height; ++y) {
+            int index = y * region.width;
+            if (y < whiteHeight) {
+                Arrays.fill(pixels, index, index + whiteWidth, 0xFFFFFF);
+                Arrays.fill(pixels, index + whiteWidth, index + region.width, 0);
+            } else {
+                Arrays.fill(pixels, index, index + region.width, 0);
+            }
         }
-        graphics.setColor(Color.WHITE);
-        graphics.fillRect(0, 0, minWidth, minHeight);
-        graphics.dispose();
         return bim3;
     }
 
+    /**
+     * Borrow an RGB image from the pool or create a new one.
+     */
+    private static BufferedImage createRgbImage(int width, int height, BufferedImagePool pool) {
+        if (pool != null) {
+            return pool.borrow(width, height, BufferedImage.TYPE_INT_RGB);
+        }
+        return new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    }
+
+    private boolean isParallel(int width, int height) {
+        return parallel && (long) width * height > PARALLEL_THRESHOLD_PIXELS;
+    }
+
+    /**
+     * Split an area starting at the origin into tiles.
+     */
+    private static List<Rectangle> createTiles(int width, int height) {
+        List<Rectangle> result = new ArrayList<Rectangle>();
+
+        for (int y = 0; y < height; y += TILE_SIZE) {
+            for (int x = 0; x < width; x += TILE_SIZE) {
+                result.add(new Rectangle(x, y, Math.min(TILE_SIZE, width - x), Math.min(TILE_SIZE, height - y)));
+            }
+        }
+
+        return result;
+    }
+
+    private static Rectangle union(Rectangle rectangle, Rectangle other) {
+        return (rectangle == null ? other : rectangle.union(other));
+    }
+
     /**
      * Create an empty RGB image in white.
      */
     private BufferedImage createEmpty(int width, int height) {
-        BufferedImage bim3 = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        Graphics graphics = bim3.getGraphics();
-        graphics.setColor(Color.WHITE);
-        graphics.fillRect(0, 0, width, height);
-        graphics.dispose();
+        BufferedImage bim3 = createRgbImage(width, height, bufferedImagePool);
+        Arrays.fill(getPixels(bim3), 0xFFFFFF);
         return bim3;
     }
+
+    /**
+     * Diffs a list of tiles into a shared diff image by recursively splitting the list.
+     */
+    private static class DiffTileTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final BufferedImage bim1;
+        private final BufferedImage bim2;
+        private final int threshold;
+        private final BufferedImage diffImage;
+        private final Rectangle region;
+        private final List<Rectangle> tileList;
+
+        DiffTileTask(BufferedImage bim1, BufferedImage bim2, int threshold, BufferedImage diffImage, Rectangle region, List<Rectangle> tileList) {
+            this.bim1 = bim1;
+            this.bim2 = bim2;
+            this.threshold = threshold;
+            this.diffImage = diffImage;
+            this.region = region;
+            this.tileList = tileList;
+        }
+
+        @Override
+        protected void compute() {
+            if (tileList.size() > 1) {
+                int middle = tileList.size() / 2;
+                invokeAll(new DiffTileTask(bim1, bim2, threshold, diffImage, region, tileList.subList(0, middle)),
+                        new DiffTileTask(bim1, bim2, threshold, diffImage, region, tileList.subList(middle, tileList.size())));
+            } else if (tileList.size() == 1) {
+                Rectangle tile = tileList.get(0);
+                AtomicBoolean isDifferent = new AtomicBoolean(false);
+                // identical tiles are skipped since the diff image is already white
+                compareArea(bim1, bim2, threshold, isDifferent, tile);
+                if (isDifferent.get()) {
+                    diffRegion(bim1, bim2, threshold, diffImage, region, tile, null);
+                }
+            }
+        }
+    }
+
+    /**
+     * Compares a list of tiles until the first difference is found.
+     */
+    private static class CompareTileTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final BufferedImage bim1;
+        private final BufferedImage bim2;
+        private final int threshold;
+        private final AtomicBoolean isDifferent;
+        private final List<Rectangle> tileList;
+
+        CompareTileTask(BufferedImage bim1, BufferedImage bim2, int threshold, AtomicBoolean isDifferent, List<Rectangle> tileList) {
+            this.bim1 = bim1;
+            this.bim2 = bim2;
+            this.threshold = threshold;
+            this.isDifferent = isDifferent;
+            this.tileList = tileList;
+        }
+
+        @Override
+        protected void compute() {
+            if (isDifferent.get()) {
+                return;
+            }
+            if (tileList.size() > 1) {
+                int middle = tileList.size() / 2;
+                invokeAll(new CompareTileTask(bim1, bim2, threshold, isDifferent, tileList.subList(0, middle)),
+                        new CompareTileTask(bim1, bim2, threshold, isDifferent, tileList.subList(middle, tileList.size())));
+            } else if (tileList.size() == 1) {
+                compareArea(bim1, bim2, threshold, isDifferent, tileList.get(0));
+            }
+        }
+    }
 }
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Contains ready-to use operations to calculate the digest of files.
+ */
+public class FileDigestUtils {
+
+    public static final String DEFAULT_ALGORITHM = "SHA-256";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Calculate the digest of a file by streaming its content through a file channel.
+     *
+     * @param file      the file
+     * @param algorithm the digest algorithm, e.g. "SHA-256"
+     * @return the digest
+     * @throws IOException reading the file failed
+     */
+    public static byte[] digest(File file, String algorithm) throws IOException {
+
+        assert file != null : "file is null";
+        assert algorithm != null : "algorithm is null";
+
+        MessageDigest messageDigest = createMessageDigest(algorithm);
+        ByteBuffer byteBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        FileInputStream fis = new FileInputStream(file);
+
+        try {
+            FileChannel fileChannel = fis.getChannel();
+            while (fileChannel.read(byteBuffer) != -1) {
+                byteBuffer.flip();
+                messageDigest.update(byteBuffer);
+                byteBuffer.clear();
+            }
+        } finally {
+            fis.close();
+        }
+
+        return messageDigest.digest();
+    }
+
+    /**
+     * Check if two files have the same content by comparing their size and digest.
+     *
+     * @param file1 the first file
+     * @param file2 the second file
+     * @return true if both files have the same content
+     * @throws IOException reading the files failed
+     */
+    public static boolean hasSameContent(File file1, File file2) throws IOException {
+
+        assert file1 != null : "file1 is null";
+        assert file2 != null : "file2 is null";
+
+        if (file1.length() != file2.length()) {
+            return false;
+        }
+
+        if (file1.getCanonicalFile().equals(file2.getCanonicalFile())) {
+            return true;
+        }
+
+        return Arrays.equals(digest(file1, DEFAULT_ALGORITHM), digest(file2, DEFAULT_ALGORITHM));
+    }
+
+    /**
+     * Convert a digest into a lower-case hex string.
+     */
+    public static String toHexString(byte[] digest) {
+        StringBuilder sb = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    private static MessageDigest createMessageDigest(String algorithm) throws IOException {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("Unsupported digest algorithm : " + algorithm, e);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Records the metrics in memory and registers each timer and counter as
+ * MXBean of the platform MBean server, e.g. "org.github.jipsg:type=Timer,name=render"
+ * when being used for the first time. Metrics which can't be registered, e.g.
+ * since another instance already uses the same domain, are only recorded in
+ * memory - recording metrics never fails the measured work.
+ */
+public class JmxMetrics implements Metrics {
+
+    private static final Logger LOGGER = Logger.getLogger(JmxMetrics.class.getName());
+
+    public static final String DEFAULT_DOMAIN = "org.github.jipsg";
+
+    /**
+     * The JMX domain of the registered MXBeans
+     */
+    private final String domain;
+
+    private final ConcurrentMap<String, Timer> timerMap;
+
+    private final ConcurrentMap<String, Counter> counterMap;
+
+    /**
+     * The names of the registered MXBeans
+     */
+    private final List<ObjectName> objectNameList;
+
+    public JmxMetrics() {
+        this(DEFAULT_DOMAIN);
+    }
+
+    public JmxMetrics(String domain) {
+        assert domain != null : "No domain provided";
+        this.domain = domain;
+        this.timerMap = new ConcurrentHashMap<String, Timer>();
+        this.counterMap = new ConcurrentHashMap<String, Counter>();
+        this.objectNameList = new ArrayList<ObjectName>();
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public long startTimer() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public void stopTimer(String name, long startTime) {
+        getTimer(name).record(System.nanoTime() - startTime);
+    }
+
+    @Override
+    public void increment(String name, long delta) {
+        getCounter(name).increment(delta);
+    }
+
+    public Timer getTimer(String name) {
+        Timer result = timerMap.get(name);
+
+        if (result == null) {
+            Timer timer = new Timer();
+            result = timerMap.putIfAbsent(name, timer);
+            if (result == null) {
+                register("Timer", name, timer);
+                result = timer;
+            }
+        }
+
+        return result;
+    }
+
+    public Counter getCounter(String name) {
+        Counter result = counterMap.get(name);
+
+        if (result == null) {
+            Counter counter = new Counter();
+            result = counterMap.putIfAbsent(name, counter);
+            if (result == null) {
+                register("Counter", name, counter);
+                result = counter;
+            }
+        }
+
+        return result;
+    }
+
+    public Map<String, Timer> getTimerMap() {
+        return timerMap;
+    }
+
+    public Map<String, Counter> getCounterMap() {
+        return counterMap;
+    }
+
+    public String getDomain() {
+        return domain;
+    }
+
+    /**
+     * Remove all registered MXBeans from the platform MBean server.
+     */
+    public synchronized void unregister() {
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+
+        for (ObjectName objectName : objectNameList) {
+            try {
+                mBeanServer.unregisterMBean(objectName);
+            } catch (JMException e) {
+                // already unregistered
+            }
+        }
+
+        objectNameList.clear();
+    }
+
+    private synchronized void register(String type, String name, Object mxBean) {
+        try {
+            ObjectName objectName = new ObjectName(domain + ":type=" + type + ",name=" + name);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(mxBean, objectName);
+            objectNameList.add(objectName);
+        } catch (JMException e) {
+            LOGGER.log(Level.WARNING, "Registering the metric failed : domain=" + domain + ", name=" + name, e);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Registering the metric failed : domain=" + domain + ", name=" + name, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("JmxMetrics{");
+        sb.append("domain='").append(domain).append('\'');
+        sb.append(", timerMap=").append(timerMap);
+        sb.append(", counterMap=").append(counterMap);
+        sb.append('}');
+        return sb.toString();
+    }
+}
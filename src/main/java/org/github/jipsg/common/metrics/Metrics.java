@@ -0,0 +1,51 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.metrics;
+
+/**
+ * Minimal SPI to record timers and counters. Instrumented code always calls
+ * "startTimer" and "stopTimer" so that a disabled implementation costs next
+ * to nothing, i.e. not even reading the clock.
+ */
+public interface Metrics {
+
+    /**
+     * @return true if the metrics are recorded at all
+     */
+    boolean isEnabled();
+
+    /**
+     * @return the start time passed to "stopTimer" or 0 if disabled
+     */
+    long startTimer();
+
+    /**
+     * Record the time elapsed since the start time.
+     *
+     * @param name      the name of the timer, e.g. "render"
+     * @param startTime the value returned by "startTimer"
+     */
+    void stopTimer(String name, long startTime);
+
+    /**
+     * Increment a counter.
+     *
+     * @param name  the name of the counter, e.g. "pages"
+     * @param delta the value to add
+     */
+    void increment(String name, long delta);
+}
@@ -0,0 +1,119 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe timer keeping a histogram of the recorded times using one
+ * bucket per power of two nanoseconds, i.e. the percentiles are accurate
+ * within a factor of two while recording is allocation-free.
+ */
+public class Timer implements TimerMXBean {
+
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLongArray buckets = new AtomicLongArray(64);
+
+    public void record(long nanos) {
+        long currNanos = Math.max(nanos, 0);
+        count.incrementAndGet();
+        totalNanos.addAndGet(currNanos);
+        buckets.incrementAndGet(63 - Long.numberOfLeadingZeros(currNanos | 1));
+
+        long currMaxNanos = maxNanos.get();
+        while (currNanos > currMaxNanos && !maxNanos.compareAndSet(currMaxNanos, currNanos)) {
+            currMaxNanos = maxNanos.get();
+        }
+    }
+
+    @Override
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.get();
+    }
+
+    /**
+     * Get the upper bound of the bucket containing the percentile.
+     *
+     * @param percentile the percentile between 0 and 1
+     * @return the time in nanoseconds
+     */
+    public long getPercentileNanos(double percentile) {
+        assert percentile >= 0 && percentile <= 1 : "invalid percentile : " + percentile;
+        long threshold = (long) Math.ceil(percentile * count.get());
+        long currCount = 0;
+
+        for (int i = 0; i < buckets.length(); i++) {
+            currCount += buckets.get(i);
+            if (currCount > 0 && currCount >= threshold) {
+                return Math.min(i < 62 ? (2L << i) - 1 : Long.MAX_VALUE, maxNanos.get());
+            }
+        }
+
+        return 0;
+    }
+
+    @Override
+    public double getTotalTimeMillis() {
+        return getTotalNanos() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getMeanTimeMillis() {
+        long currCount = getCount();
+        return (currCount > 0 ? getTotalNanos() / NANOS_PER_MILLI / currCount : 0);
+    }
+
+    @Override
+    public double getMaxTimeMillis() {
+        return maxNanos.get() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double get50thPercentileMillis() {
+        return getPercentileNanos(0.50) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double get95thPercentileMillis() {
+        return getPercentileNanos(0.95) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double get99thPercentileMillis() {
+        return getPercentileNanos(0.99) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("Timer{");
+        sb.append("count=").append(getCount());
+        sb.append(", totalTimeMillis=").append(getTotalTimeMillis());
+        sb.append(", meanTimeMillis=").append(getMeanTimeMillis());
+        sb.append(", maxTimeMillis=").append(getMaxTimeMillis());
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.pdf;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Writes the diff images using a pool of encoder threads so that encoding
+ * overlaps with comparing the next documents. The number of pending images
+ * is bounded, i.e. the caller blocks instead of growing the heap when the
+ * encoders can't keep up. Call "flush" to wait for the pending images and
+ * "close" to stop the encoder threads.
+ */
+public class AsyncPdfDocumentComparatorResultWriter extends PdfDocumentComparatorResultWriter implements Closeable {
+
+    /**
+     * The encoder threads
+     */
+    private final ExecutorService executorService;
+
+    /**
+     * The maximum number of diff images queued or being encoded
+     */
+    private final int maxNrOfPendingImages;
+
+    /**
+     * One permit for each diff image which might be queued
+     */
+    private final Semaphore pendingImages;
+
+    /**
+     * The first failure since the last flush - including errors, e.g. running
+     * out of memory while encoding a large diff image
+     */
+    private final AtomicReference<Throwable> failure;
+
+    public AsyncPdfDocumentComparatorResultWriter(int nrOfThreads, int maxNrOfPendingImages) {
+        assert nrOfThreads > 0 : "invalid nrOfThreads : " + nrOfThreads;
+        assert maxNrOfPendingImages > 0 : "invalid maxNrOfPendingImages : " + maxNrOfPendingImages;
+        this.executorService = Executors.newFixedThreadPool(nrOfThreads, new EncoderThreadFactory());
+        this.maxNrOfPendingImages = maxNrOfPendingImages;
+        this.pendingImages = new Semaphore(maxNrOfPendingImages);
+        this.failure = new AtomicReference<Throwable>();
+    }
+
+    /**
+     * Queue the diff image for encoding - blocks while the maximum number of
+     * images is pending.
+     */
+    @Override
+    protected void writeImage(final BufferedImage bufferedImage, final File file) throws Exception {
+        pendingImages.acquire();
+
+        try {
+            executorService.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        AsyncPdfDocumentComparatorResultWriter.super.writeImage(bufferedImage, file);
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        pendingImages.release();
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            pendingImages.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Wait until all pending diff images are written.
+     *
+     * @throws Exception writing a diff image failed since the last flush
+     * @throws Error     writing a diff image failed with an error since the last flush
+     */
+    public void flush() throws Exception {
+        pendingImages.acquire(maxNrOfPendingImages);
+        pendingImages.release(maxNrOfPendingImages);
+
+        Throwable e = failure.getAndSet(null);
+
+        if (e instanceof Error) {
+            throw (Error) e;
+        } else if (e != null) {
+            throw new IOException("Writing the diff images failed", e);
+        }
+    }
+
+    /**
+     * Wait until all pending diff images are written and stop the encoder threads.
+     *
+     * @throws IOException writing a diff image failed
+     * @throws Error       writing a diff image failed with an error
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    /**
+     * Creates daemon threads to avoid blocking the JVM exit.
+     */
+    private static class EncoderThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread result = new Thread(runnable, "pdf-diff-image-writer-" + threadNumber.getAndIncrement());
+            result.setDaemon(true);
+            return result;
+        }
+    }
+}
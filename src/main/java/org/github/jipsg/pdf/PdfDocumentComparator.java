@@ -16,49 +16,856 @@
  */
 package org.github.jipsg.pdf;
 
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.github.jipsg.common.image.BufferedImageHash;
+import org.github.jipsg.common.image.BufferedImagePool;
 import org.github.jipsg.common.image.compare.ImageComparator;
 import org.github.jipsg.common.image.compare.ImageComparatorResult;
 import org.github.jipsg.common.image.compare.impl.XorImageComparator;
+import org.github.jipsg.common.image.compare.impl.XorVerdictImageComparator;
+import org.github.jipsg.common.io.FileDigestUtils;
+import org.github.jipsg.common.metrics.Metrics;
+import org.github.jipsg.common.metrics.NoopMetrics;
+import org.github.jipsg.pdfbox.PDDocumentFactory;
+import org.github.jipsg.pdfbox.PdfPageImageCache;
+import org.github.jipsg.pdfbox.PdfPageImageProducer;
+import org.github.jipsg.pdfbox.PdfPageMemoryGovernor;
+import org.github.jipsg.pdfbox.PdfResourceCache;
 import org.github.jipsg.pdfbox.PdfToImageConverter;
 
 import javax.activation.DataSource;
 import javax.activation.FileDataSource;
 import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.FileFilter;
 import java.io.FileNotFoundException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Compare PDF documents.
  */
 public class PdfDocumentComparator {
 
+    /**
+     * The number of rendered pages waiting to be compared when pipelining
+     */
+    private static final int PIPELINE_QUEUE_SIZE = 2;
+
+    /**
+     * The resolution used to render the pages for the page fingerprints
+     */
+    private static final int PAGE_FINGERPRINT_RESOLUTION = 36;
+
+    /**
+     * The maximum fingerprint distance of pages considered to be similar when aligning pages
+     */
+    private static final int PAGE_FINGERPRINT_MAX_DISTANCE = 8;
+
+    /**
+     * The number of pending document comparisons per thread when comparing directories
+     */
+    private static final int COMPARISONS_PER_THREAD = 2;
+
+    /**
+     * The default resolution used to render the pages
+     */
+    private static final int DEFAULT_RESOLUTION = 72;
+
+    /**
+     * Number of threads used to compare the documents of two directories
+     */
+    private int nrOfThreads;
+
+    /**
+     * Optional executor service used to compare the documents of two directories
+     */
+    private ExecutorService executorService;
+
+    /**
+     * Render the pages of both documents in background threads while comparing
+     */
+    private boolean pipelined;
+
+    /**
+     * Compares the rendered pages - must be thread-safe when comparing directories concurrently
+     */
+    private ImageComparator imageComparator;
+
+    /**
+     * Skip rendering of files having the same size and digest
+     */
+    private boolean digestCheck;
+
+    /**
+     * Optional cache of rendered reference pages
+     */
+    private PdfPageImageCache pageImageCache;
+
+    /**
+     * Align the pages of both documents to detect inserted and removed pages
+     */
+    private boolean pageAlignment;
+
+    /**
+     * Optional directory for scratch files keeping the parsed documents off the heap
+     */
+    private File scratchDirectory;
+
+    /**
+     * The resolution used to render the pages for the final verdict
+     */
+    private int resolution;
+
+    /**
+     * Optional lower resolution for a first pass over all pages
+     */
+    private int coarseResolution;
+
+    /**
+     * The color model used to render the pages, e.g. "rgb", "gray" or "bilevel"
+     */
+    private String color;
+
+    /**
+     * Optional governor limiting the estimated bytes of the pages rendered concurrently
+     */
+    private PdfPageMemoryGovernor memoryGovernor;
+
+    /**
+     * Records the timers and counters of the comparison
+     */
+    private Metrics metrics;
+
+    /**
+     * Optional manifest of previous results to skip unchanged pairs
+     */
+    private PdfDocumentComparatorManifest manifest;
+
+    /**
+     * Include the documents of nested directories when comparing directories
+     */
+    private boolean recursive;
+
+    /**
+     * Compare the documents of each directory in the order of their names
+     */
+    private boolean sortedTraversal;
+
+    /**
+     * The shard of the directory documents to compare
+     */
+    private int shardIndex;
+
+    /**
+     * The number of shards the directory documents are partitioned into
+     */
+    private int nrOfShards;
+
+    /**
+     * Optional pool to reuse the rasters of rendered pages
+     */
+    private BufferedImagePool bufferedImagePool;
+
+    /**
+     * Optional cache of fonts and images shared across documents
+     */
+    private PdfResourceCache resourceCache;
+
     public PdfDocumentComparator() {
+        this.nrOfThreads = 1;
+        this.resolution = DEFAULT_RESOLUTION;
+        this.coarseResolution = 0;
+        this.color = "RGB";
+        this.metrics = NoopMetrics.INSTANCE;
+        this.shardIndex = 0;
+        this.nrOfShards = 1;
+        this.pipelined = false;
+        this.imageComparator = new XorImageComparator();
+        this.digestCheck = false;
+    }
+
+    public boolean isDigestCheck() {
+        return digestCheck;
+    }
+
+    /**
+     * Compare the size and the digest of two files before rendering - byte-identical
+     * files are reported as identical without rendering and without diff images.
+     *
+     * @param digestCheck enable the digest check
+     * @return this instance
+     */
+    public PdfDocumentComparator setDigestCheck(boolean digestCheck) {
+        this.digestCheck = digestCheck;
+        return this;
+    }
+
+    public ImageComparator getImageComparator() {
+        return imageComparator;
+    }
+
+    /**
+     * Set the comparator for the rendered pages, e.g. a "XorVerdictImageComparator"
+     * when no diff images are needed.
+     *
+     * @param imageComparator the image comparator
+     * @return this instance
+     */
+    public PdfDocumentComparator setImageComparator(ImageComparator imageComparator) {
+        assert imageComparator != null : "No imageComparator provided";
+        this.imageComparator = imageComparator;
+        return this;
+    }
+
+    public boolean isPipelined() {
+        return pipelined;
+    }
+
+    /**
+     * Render the reference and the current document in two background threads
+     * feeding the comparison through bounded queues, i.e. page N+1 is rendered
+     * while page N is compared.
+     *
+     * @param pipelined enable the pipelined comparison
+     * @return this instance
+     */
+    public PdfDocumentComparator setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+        return this;
+    }
+
+    public int getNrOfThreads() {
+        return nrOfThreads;
+    }
+
+    /**
+     * Compare the documents of two directories using a pool of the given size.
+     *
+     * @param nrOfThreads the number of worker threads
+     * @return this instance
+     */
+    public PdfDocumentComparator setNrOfThreads(int nrOfThreads) {
+        assert nrOfThreads > 0 : "invalid number of threads : " + nrOfThreads;
+        this.nrOfThreads = nrOfThreads;
+        return this;
+    }
+
+    public ExecutorService getExecutorService() {
+        return executorService;
+    }
+
+    /**
+     * Compare the documents of two directories using the given executor service
+     * which is not shut down by this class.
+     *
+     * @param executorService the executor service
+     * @return this instance
+     */
+    public PdfDocumentComparator setExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+        return this;
+    }
+
+    public PdfPageImageCache getPageImageCache() {
+        return pageImageCache;
+    }
+
+    /**
+     * Cache the rendered pages of reference documents which are read from
+     * files, e.g. when comparing one reference with many documents.
+     *
+     * @param pageImageCache the cache which might be shared between instances
+     * @return this instance
+     */
+    public PdfDocumentComparator setPageImageCache(PdfPageImageCache pageImageCache) {
+        this.pageImageCache = pageImageCache;
+        return this;
+    }
+
+    public boolean isPageAlignment() {
+        return pageAlignment;
+    }
+
+    /**
+     * Align the pages of the documents using cheap page fingerprints before
+     * comparing them so that inserted or removed pages are reported instead
+     * of all subsequent pages being different. The page image cache is not
+     * used for aligned pages.
+     *
+     * @param pageAlignment enable the page alignment
+     * @return this instance
+     */
+    public PdfDocumentComparator setPageAlignment(boolean pageAlignment) {
+        this.pageAlignment = pageAlignment;
+        return this;
+    }
+
+    public BufferedImagePool getBufferedImagePool() {
+        return bufferedImagePool;
+    }
+
+    /**
+     * Render the pages into images borrowed from the pool and release them after
+     * the comparison - therefore the image comparator must not keep the page
+     * images in its result. Cached reference pages are never released and the
+     * diff images belong to the results.
+     *
+     * @param bufferedImagePool the pool which might be shared between instances
+     * @return this instance
+     */
+    public PdfDocumentComparator setBufferedImagePool(BufferedImagePool bufferedImagePool) {
+        this.bufferedImagePool = bufferedImagePool;
+        return this;
+    }
+
+    public PdfResourceCache getResourceCache() {
+        return resourceCache;
+    }
+
+    /**
+     * Share parsed fonts and decoded images between documents, e.g. when
+     * comparing many documents created from the same template.
+     *
+     * @param resourceCache the cache which might be shared between instances
+     * @return this instance
+     */
+    public PdfDocumentComparator setResourceCache(PdfResourceCache resourceCache) {
+        this.resourceCache = resourceCache;
+        return this;
+    }
+
+    public File getScratchDirectory() {
+        return scratchDirectory;
+    }
+
+    /**
+     * Keep the stream content of the parsed documents in temporary scratch
+     * files instead of the heap, e.g. when comparing large documents with
+     * many threads.
+     *
+     * @param scratchDirectory the directory for the scratch files or null to parse on the heap
+     * @return this instance
+     */
+    public PdfDocumentComparator setScratchDirectory(File scratchDirectory) {
+        this.scratchDirectory = scratchDirectory;
+        return this;
+    }
+
+    public int getResolution() {
+        return resolution;
+    }
+
+    public PdfDocumentComparator setResolution(int resolution) {
+        assert resolution > 0 : "Invalid resolution : " + resolution;
+        this.resolution = resolution;
+        return this;
+    }
+
+    public int getCoarseResolution() {
+        return coarseResolution;
+    }
+
+    /**
+     * Compare all pages at a low resolution first and re-render only the pages
+     * which are not identical at the low resolution for the final verdict, e.g.
+     * to get the accuracy of a high resolution for mostly identical documents
+     * at close to the cost of the low resolution. Pages being identical at the
+     * low resolution are considered identical.
+     *
+     * @param coarseResolution the resolution of the first pass or 0 to disable it
+     * @return this instance
+     */
+    public PdfDocumentComparator setCoarseResolution(int coarseResolution) {
+        assert coarseResolution >= 0 : "Invalid coarse resolution : " + coarseResolution;
+        this.coarseResolution = coarseResolution;
+        return this;
+    }
+
+    public String getColor() {
+        return color;
+    }
+
+    /**
+     * Set the color model used to render the pages, e.g. "bilevel" together
+     * with a "BilevelImageComparator" for text-only documents.
+     *
+     * @param color the color model, e.g. "rgb", "gray" or "bilevel"
+     * @return this instance
+     */
+    public PdfDocumentComparator setColor(String color) {
+        assert color != null : "No color provided";
+        this.color = color;
+        return this;
+    }
+
+    public PdfPageMemoryGovernor getMemoryGovernor() {
+        return memoryGovernor;
+    }
+
+    /**
+     * Only render and compare pages while the estimated bytes of the rendered
+     * pages and diff images stay within the budget of the governor, e.g. when
+     * comparing directories with many threads on a fixed heap. The governor
+     * might be shared between instances.
+     *
+     * @param memoryGovernor the memory governor
+     * @return this instance
+     */
+    public PdfDocumentComparator setMemoryGovernor(PdfPageMemoryGovernor memoryGovernor) {
+        this.memoryGovernor = memoryGovernor;
+        return this;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Record the timers "document", "parse", "page", "render", "render.wait"
+     * (pipelined), "compare" and "page.refine" (coarse-to-fine) together with
+     * the counters "documents", "pages", "diffs", "errors", "renderedBytes" and
+     * "skipped" (manifest). The "render" timer and the "renderedBytes" counter
+     * only cover pages actually rendered, i.e. not taken from the page image cache.
+     * The "compare" timer is split into the timers "diff" and "histogram" when
+     * using a "XorImageComparator", e.g. the default image comparator.
+     *
+     * @param metrics the metrics, e.g. "JmxMetrics"
+     * @return this instance
+     */
+    public PdfDocumentComparator setMetrics(Metrics metrics) {
+        assert metrics != null : "No metrics provided";
+        this.metrics = metrics;
+        return this;
+    }
+
+    public PdfDocumentComparatorManifest getManifest() {
+        return manifest;
+    }
+
+    /**
+     * Compare files incrementally, i.e. pairs of files which did not change since
+     * being stored in the manifest are not compared again and their results
+     * contain no diff images. The manifest is updated after each compared pair.
+     *
+     * @param manifest the manifest or null to compare all files
+     * @return this instance
+     */
+    public PdfDocumentComparator setManifest(PdfDocumentComparatorManifest manifest) {
+        this.manifest = manifest;
+        return this;
+    }
+
+    public boolean isRecursive() {
+        return recursive;
+    }
+
+    /**
+     * Compare the documents of nested directories as well where the relative
+     * path of a reference document, e.g. "customer/2014/invoice.pdf", is used
+     * as name of the result and to find the current document. The documents
+     * are compared while traversing the directories, see {@link #setSortedTraversal}
+     * for the order.
+     *
+     * @param recursive include nested directories
+     * @return this instance
+     */
+    public PdfDocumentComparator setRecursive(boolean recursive) {
+        this.recursive = recursive;
+        return this;
+    }
+
+    public boolean isSortedTraversal() {
+        return sortedTraversal;
+    }
+
+    /**
+     * Compare the documents of each directory in the order of their names and
+     * the files of a directory before its sub-directories. This trades memory
+     * for a deterministic order since the entries of each directory are listed
+     * completely before the first document is compared. Otherwise the documents
+     * are compared in the order of the directory stream while iterating it and
+     * only the sub-directories are kept until the files are passed.
+     *
+     * @param sortedTraversal compare the documents in a deterministic order
+     * @return this instance
+     */
+    public PdfDocumentComparator setSortedTraversal(boolean sortedTraversal) {
+        this.sortedTraversal = sortedTraversal;
+        return this;
+    }
+
+    public int getShardIndex() {
+        return shardIndex;
     }
 
+    public int getNrOfShards() {
+        return nrOfShards;
+    }
+
+    /**
+     * Only compare the directory documents of one shard where the documents are
+     * partitioned deterministically by the hash of their relative path, e.g. to
+     * split a large comparison across multiple processes.
+     *
+     * @param shardIndex the zero-based index of the shard to compare
+     * @param nrOfShards the total number of shards
+     * @return this instance
+     */
+    public PdfDocumentComparator setShard(int shardIndex, int nrOfShards) {
+        assert nrOfShards > 0 : "invalid nrOfShards : " + nrOfShards;
+        assert shardIndex >= 0 && shardIndex < nrOfShards : "invalid shardIndex : " + shardIndex;
+        this.shardIndex = shardIndex;
+        this.nrOfShards = nrOfShards;
+        return this;
+    }
+
+    /**
+     * Get the shard of a directory document based on "String.hashCode" which
+     * is the same for all JVMs.
+     *
+     * @param relativePath the relative path of the reference document using "/" as separator
+     * @param nrOfShards   the total number of shards
+     * @return the zero-based index of the shard
+     */
+    public static int getShardIndex(String relativePath, int nrOfShards) {
+        return (relativePath.hashCode() & Integer.MAX_VALUE) % nrOfShards;
+    }
+
+    private boolean isCoarseToFine() {
+        return coarseResolution > 0 && coarseResolution < resolution;
+    }
+
+    /**
+     * Compare two PDF documents page by page - both documents are kept open
+     * and only the current pair of pages is rendered at any time so the
+     * memory consumption does not depend on the number of pages.
+     *
+     * @param referenceDataSource the reference document
+     * @param documentDataSource  the current document
+     * @return the result of the comparison
+     * @throws Exception the comparison failed
+     */
     public PdfDocumentComparatorResult compareDocuments(DataSource referenceDataSource, DataSource documentDataSource) throws Exception {
-        final List<BufferedImage> referenceImageList = new PdfToImageConverter().toImages(referenceDataSource, "png", 1, Byte.MAX_VALUE, 72, "RGB");
-        final List<BufferedImage> documentImageList = new PdfToImageConverter().toImages(documentDataSource, "png", 1, Byte.MAX_VALUE, 72, "RGB");
+        long startTime = metrics.startTimer();
+        PDDocument referenceDocument = null;
+        PDDocument document = null;
 
-        int referenceImageListSize = referenceImageList.size();
-        int documentImageListSize = documentImageList.size();
+        try {
+            referenceDocument = createPDDocument(referenceDataSource);
+            document = createPDDocument(documentDataSource);
+            String referenceDocumentId = getDocumentId(referenceDataSource);
+            PdfDocumentComparatorResult result = compareDocuments(referenceDataSource.getName(), referenceDocumentId, referenceDocument, documentDataSource.getName(), document);
+            recordResult(result);
+            return result;
+        } finally {
+            if (document != null) {
+                document.close();
+            }
+            if (referenceDocument != null) {
+                referenceDocument.close();
+            }
+            metrics.stopTimer("document", startTime);
+        }
+    }
 
-        List<ImageComparatorResult> imageDifferResultList = new ArrayList<ImageComparatorResult>();
+    private PDDocument createPDDocument(DataSource dataSource) throws Exception {
+        long startTime = metrics.startTimer();
+
+        try {
+            return createPDDocumentFactory().create(dataSource);
+        } finally {
+            metrics.stopTimer("parse", startTime);
+        }
+    }
+
+    private void recordResult(PdfDocumentComparatorResult pdfDocumentComparatorResult) {
+        if (metrics.isEnabled()) {
+            int nrOfDiffs = 0;
+            for (ImageComparatorResult imageComparatorResult : pdfDocumentComparatorResult.getImageDifferResultList()) {
+                nrOfDiffs += (imageComparatorResult.isIdentical() ? 0 : 1);
+            }
+            metrics.increment("documents", 1);
+            metrics.increment("pages", pdfDocumentComparatorResult.getImageDifferResultList().size());
+            metrics.increment("diffs", nrOfDiffs);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private PdfDocumentComparatorResult compareDocuments(String referenceName, String referenceDocumentId, PDDocument referenceDocument, String documentName, PDDocument document) throws Exception {
+        final List<PDPage> referencePageList = referenceDocument.getDocumentCatalog().getAllPages();
+        final List<PDPage> documentPageList = document.getDocumentCatalog().getAllPages();
+
+        int referencePageListSize = referencePageList.size();
+        int documentPageListSize = documentPageList.size();
+
+        if (pageAlignment) {
+            return compareAlignedDocuments(referenceName, referencePageList, documentName, documentPageList);
+        }
+
+        int nrOfPages = Math.min(referencePageListSize, documentPageListSize);
+        List<ImageComparatorResult> imageDifferResultList = comparePages(referencePageList, referenceDocumentId, documentPageList, nrOfPages);
+        return new PdfDocumentComparatorResult(referenceName, referencePageListSize, documentName, documentPageListSize, imageDifferResultList);
+    }
+
+    private PdfDocumentComparatorResult compareAlignedDocuments(String referenceName, List<PDPage> referencePageList, String documentName, List<PDPage> documentPageList) throws Exception {
+        PdfPageAlignment pdfPageAlignment = PdfPageAlignment.align(getPageFingerprints(referencePageList), getPageFingerprints(documentPageList), PAGE_FINGERPRINT_MAX_DISTANCE);
+        List<PDPage> alignedReferencePageList = new ArrayList<PDPage>();
+        List<PDPage> alignedDocumentPageList = new ArrayList<PDPage>();
+
+        for (int i = 0; i < pdfPageAlignment.getNrOfPagePairs(); i++) {
+            alignedReferencePageList.add(referencePageList.get(pdfPageAlignment.getReferencePageIndex(i)));
+            alignedDocumentPageList.add(documentPageList.get(pdfPageAlignment.getDocumentPageIndex(i)));
+        }
+
+        List<ImageComparatorResult> imageDifferResultList = comparePages(alignedReferencePageList, null, alignedDocumentPageList, pdfPageAlignment.getNrOfPagePairs());
+        return new PdfDocumentComparatorResult(referenceName, referencePageList.size(), documentName, documentPageList.size(), imageDifferResultList, pdfPageAlignment);
+    }
+
+    /**
+     * Calculate the perceptual hashes of pages rendered at a low resolution.
+     */
+    private long[] getPageFingerprints(List<PDPage> pageList) throws Exception {
+        PdfToImageConverter pdfToImageConverter = new PdfToImageConverter(resourceCache);
+        long[] result = new long[pageList.size()];
+
+        for (int i = 0; i < result.length; i++) {
+            result[i] = BufferedImageHash.dHash(pdfToImageConverter.toImage(pageList.get(i), PAGE_FINGERPRINT_RESOLUTION, "gray"));
+        }
+
+        return result;
+    }
+
+    /**
+     * Compare the pages either in a single pass or in a coarse pass followed
+     * by re-rendering the pages not being identical at the final resolution.
+     */
+    private List<ImageComparatorResult> comparePages(List<PDPage> referencePageList, String referenceDocumentId, List<PDPage> documentPageList, int nrOfPages) throws Exception {
+        List<ImageComparatorResult> result;
+        int currResolution = (isCoarseToFine() ? coarseResolution : resolution);
+        ImageComparator currImageComparator = (isCoarseToFine() ? new XorVerdictImageComparator(0) : imageComparator);
+
+        if (pipelined) {
+            result = comparePagesPipelined(referencePageList, referenceDocumentId, documentPageList, nrOfPages, currResolution, currImageComparator);
+        } else {
+            result = comparePagesSequentially(referencePageList, referenceDocumentId, documentPageList, nrOfPages, currResolution, currImageComparator);
+        }
+
+        if (isCoarseToFine()) {
+            refinePages(referencePageList, referenceDocumentId, documentPageList, result);
+        }
+
+        return result;
+    }
+
+    private List<ImageComparatorResult> comparePagesSequentially(List<PDPage> referencePageList, String referenceDocumentId, List<PDPage> documentPageList, int nrOfPages, int resolution, ImageComparator imageComparator) throws Exception {
+        List<ImageComparatorResult> result = new ArrayList<ImageComparatorResult>();
+
+        for (int i = 0; i < nrOfPages; i++) {
+            long startTime = metrics.startTimer();
+            long nrOfBytes = acquireMemory(getNrOfBytes(referencePageList.get(i), documentPageList.get(i), resolution));
+            try {
+                BufferedImage currReferenceImage = toImage(referencePageList, i, referenceDocumentId, resolution);
+                BufferedImage currDocumentImage = toImage(documentPageList, i, null, resolution);
+                result.add(comparePage(imageComparator, currReferenceImage, currDocumentImage));
+                releaseImage(currReferenceImage, referenceDocumentId);
+                releaseImage(currDocumentImage, null);
+            } finally {
+                releaseMemory(nrOfBytes);
+                metrics.stopTimer("page", startTime);
+            }
+        }
+
+        return result;
+    }
+
+    private List<ImageComparatorResult> comparePagesPipelined(List<PDPage> referencePageList, String referenceDocumentId, List<PDPage> documentPageList, int nrOfPages, int resolution, ImageComparator imageComparator) throws Exception {
+        List<ImageComparatorResult> result = new ArrayList<ImageComparatorResult>();
+        PdfPageImageProducer referenceImageProducer = new PdfPageImageProducer(referencePageList, nrOfPages, resolution, color, PIPELINE_QUEUE_SIZE);
+        PdfPageImageProducer documentImageProducer = new PdfPageImageProducer(documentPageList, nrOfPages, resolution, color, PIPELINE_QUEUE_SIZE);
+        referenceImageProducer.setPageImageCache(pageImageCache, referenceDocumentId);
+        referenceImageProducer.setBufferedImagePool(bufferedImagePool);
+        documentImageProducer.setBufferedImagePool(bufferedImagePool);
+        referenceImageProducer.setResourceCache(resourceCache);
+        documentImageProducer.setResourceCache(resourceCache);
+        referenceImageProducer.setMetrics(metrics);
+        documentImageProducer.setMetrics(metrics);
+        long nrOfBytes = acquireMemory(getNrOfPipelinedBytes(referencePageList, documentPageList, nrOfPages, resolution));
+        Thread referenceImageThread = startDaemonThread(referenceImageProducer, "pdf-reference-renderer");
+        Thread documentImageThread = startDaemonThread(documentImageProducer, "pdf-document-renderer");
+
+        try {
+            for (int i = 0; i < nrOfPages; i++) {
+                long startTime = metrics.startTimer();
+                long waitStartTime = metrics.startTimer();
+                BufferedImage currReferenceImage = referenceImageProducer.take();
+                BufferedImage currDocumentImage = documentImageProducer.take();
+                metrics.stopTimer("render.wait", waitStartTime);
+                result.add(comparePage(imageComparator, currReferenceImage, currDocumentImage));
+                releaseImage(currReferenceImage, referenceDocumentId);
+                releaseImage(currDocumentImage, null);
+                metrics.stopTimer("page", startTime);
+            }
+        } finally {
+            // the documents are closed afterwards so the renderers must be finished
+            try {
+                referenceImageThread.interrupt();
+                documentImageThread.interrupt();
+                referenceImageThread.join();
+                documentImageThread.join();
+            } finally {
+                releaseMemory(nrOfBytes);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Re-render the pages not being identical in the coarse pass at the final
+     * resolution - this happens after the coarse pass since the documents
+     * must not be rendered by multiple threads.
+     */
+    private void refinePages(List<PDPage> referencePageList, String referenceDocumentId, List<PDPage> documentPageList, List<ImageComparatorResult> imageComparatorResultList) throws Exception {
+        for (int i = 0; i < imageComparatorResultList.size(); i++) {
+            if (!imageComparatorResultList.get(i).isIdentical()) {
+                long startTime = metrics.startTimer();
+                long nrOfBytes = acquireMemory(getNrOfBytes(referencePageList.get(i), documentPageList.get(i), resolution));
+                try {
+                    BufferedImage currReferenceImage = toImage(referencePageList, i, referenceDocumentId, resolution);
+                    BufferedImage currDocumentImage = toImage(documentPageList, i, null, resolution);
+                    imageComparatorResultList.set(i, comparePage(imageComparator, currReferenceImage, currDocumentImage));
+                    releaseImage(currReferenceImage, referenceDocumentId);
+                    releaseImage(currDocumentImage, null);
+                } finally {
+                    releaseMemory(nrOfBytes);
+                    metrics.stopTimer("page.refine", startTime);
+                }
+            }
+        }
+    }
+
+    /**
+     * Estimate the bytes of comparing a pair of pages, i.e. both rendered pages
+     * and a RGB diff image of the larger page.
+     */
+    private long getNrOfBytes(PDPage referencePage, PDPage documentPage, int resolution) {
+        if (memoryGovernor == null) {
+            return 0;
+        }
+
+        PdfToImageConverter pdfToImageConverter = new PdfToImageConverter();
+        long diffNrOfBytes = Math.max(pdfToImageConverter.getNrOfBytes(referencePage, resolution, "rgb"), pdfToImageConverter.getNrOfBytes(documentPage, resolution, "rgb"));
+        return pdfToImageConverter.getNrOfBytes(referencePage, resolution, color) + pdfToImageConverter.getNrOfBytes(documentPage, resolution, color) + diffNrOfBytes;
+    }
 
-        for (int i = 0; i < Math.min(referenceImageListSize, documentImageListSize); i++) {
-            BufferedImage currReferenceImage = referenceImageList.get(i);
-            BufferedImage currDocumentImage = documentImageList.get(i);
-            ImageComparator imageComparator = new XorImageComparator();
-            ImageComparatorResult imageComparatorResult = imageComparator.compare(currReferenceImage, currDocumentImage);
-            imageDifferResultList.add(imageComparatorResult);
+    /**
+     * Estimate the bytes of pipelined rendering where each renderer holds the
+     * queued pages and the page being rendered while the current pair is compared.
+     */
+    private long getNrOfPipelinedBytes(List<PDPage> referencePageList, List<PDPage> documentPageList, int nrOfPages, int resolution) {
+        long result = 0;
+
+        for (int i = 0; i < nrOfPages && memoryGovernor != null; i++) {
+            result = Math.max(result, getNrOfBytes(referencePageList.get(i), documentPageList.get(i), resolution));
         }
 
-        return new PdfDocumentComparatorResult(referenceDataSource.getName(), referenceImageListSize, documentDataSource.getName(), documentImageListSize, imageDifferResultList);
+        return (PIPELINE_QUEUE_SIZE + 2) * result;
+    }
+
+    private long acquireMemory(long nrOfBytes) throws InterruptedException {
+        if (memoryGovernor != null) {
+            memoryGovernor.acquire(nrOfBytes);
+        }
+        return nrOfBytes;
+    }
+
+    private void releaseMemory(long nrOfBytes) {
+        if (memoryGovernor != null) {
+            memoryGovernor.release(nrOfBytes);
+        }
+    }
+
+    /**
+     * Render a page using the page image cache if the document has an identity.
+     */
+    private BufferedImage toImage(List<PDPage> pageList, int pageIndex, String documentId, int resolution) throws Exception {
+        BufferedImage result;
+        PdfToImageConverter pdfToImageConverter = new PdfToImageConverter(resourceCache, metrics);
+
+        if (pageImageCache != null && documentId != null) {
+            result = pageImageCache.toImage(documentId, pageIndex, pageList.get(pageIndex), resolution, color, pdfToImageConverter);
+        } else {
+            result = pdfToImageConverter.toImage(pageList.get(pageIndex), resolution, color, bufferedImagePool);
+        }
+
+        return result;
+    }
+
+    /**
+     * Return a rendered page to the pool unless it is owned by the page image cache.
+     */
+    private void releaseImage(BufferedImage bufferedImage, String documentId) {
+        if (bufferedImagePool != null && !(pageImageCache != null && documentId != null)) {
+            bufferedImagePool.release(bufferedImage);
+        }
+    }
+
+    private ImageComparatorResult comparePage(ImageComparator imageComparator, BufferedImage referenceImage, BufferedImage documentImage) {
+        long startTime = metrics.startTimer();
+
+        try {
+            if (imageComparator instanceof XorImageComparator) {
+                // record the diff and the histogram of the diff image separately
+                return ((XorImageComparator) imageComparator).compare(referenceImage, documentImage, metrics);
+            } else {
+                return imageComparator.compare(referenceImage, documentImage);
+            }
+        } finally {
+            metrics.stopTimer("compare", startTime);
+        }
+    }
+
+    /**
+     * Get the identity of a document for caching - only files are considered
+     * where the path, size and last modification time identify the content.
+     */
+    private static String getDocumentId(DataSource dataSource) {
+        if (dataSource instanceof FileDataSource) {
+            File file = ((FileDataSource) dataSource).getFile();
+            return file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified();
+        } else {
+            return null;
+        }
+    }
+
+    private static Thread startDaemonThread(Runnable runnable, String name) {
+        Thread result = new Thread(runnable, name);
+        result.setDaemon(true);
+        result.start();
+        return result;
     }
 
     public PdfDocumentComparatorResult compareFiles(File referenceFile, File documentFile) throws Exception {
+        return compareFiles(referenceFile.getName(), referenceFile, documentFile.getName(), documentFile);
+    }
+
+    /**
+     * Compare two files using the given names for the result, e.g. the relative
+     * paths of files found in nested directories.
+     */
+    private PdfDocumentComparatorResult compareFiles(String referenceName, File referenceFile, String documentName, File documentFile) throws Exception {
         PdfDocumentComparatorResult result;
         FileDataSource referenceDataSource;
         FileDataSource documentDataSource;
@@ -66,20 +873,113 @@ public class PdfDocumentComparator {
         if (!referenceFile.exists()) {
             throw new FileNotFoundException(referenceFile.getAbsolutePath());
         } else {
-            referenceDataSource = new FileDataSource(referenceFile);
+            referenceDataSource = new NamedFileDataSource(referenceName, referenceFile);
         }
 
         if (documentFile.exists()) {
-            documentDataSource = new FileDataSource(documentFile);
-            result = compareDocuments(referenceDataSource, documentDataSource);
+            documentDataSource = new NamedFileDataSource(documentName, documentFile);
+            PdfDocumentComparatorResult manifestResult = (manifest != null ? manifest.getResult(referenceName, referenceFile, documentFile, getSettings()) : null);
+            if (manifestResult != null) {
+                result = manifestResult;
+                metrics.increment("skipped", 1);
+            } else if (manifest != null) {
+                // the manifest stores the state of the files before the comparison
+                PdfDocumentComparatorManifest.FileState referenceFileState = new PdfDocumentComparatorManifest.FileState(referenceFile);
+                PdfDocumentComparatorManifest.FileState documentFileState = new PdfDocumentComparatorManifest.FileState(documentFile);
+                if (digestCheck && referenceFileState.hasSameContent(documentFileState)) {
+                    result = compareIdenticalFiles(referenceName, referenceFile, documentName);
+                } else {
+                    result = compareDocuments(referenceDataSource, documentDataSource);
+                }
+                manifest.putResult(referenceName, referenceFileState, documentFileState, getSettings(), result);
+            } else if (digestCheck && FileDigestUtils.hasSameContent(referenceFile, documentFile)) {
+                result = compareIdenticalFiles(referenceName, referenceFile, documentName);
+            } else {
+                result = compareDocuments(referenceDataSource, documentDataSource);
+            }
         } else {
-            result = new PdfDocumentComparatorResult(referenceFile.getName(), documentFile.getName(), "The following file does not exist : " + documentFile.getName());
+            result = new PdfDocumentComparatorResult(referenceName, documentName, "The following file does not exist : " + documentName);
+            metrics.increment("errors", 1);
         }
 
         return result;
     }
 
+    /**
+     * Describe the settings affecting the verdicts of a comparison.
+     */
+    private String getSettings() {
+        return "resolution=" + resolution
+                + ",coarseResolution=" + coarseResolution
+                + ",color=" + color
+                + ",pageAlignment=" + pageAlignment
+                + ",imageComparator=" + imageComparator.getClass().getName() + ":" + imageComparator;
+    }
+
+    private PDDocumentFactory createPDDocumentFactory() {
+        return (scratchDirectory != null ? new PDDocumentFactory(scratchDirectory) : new PDDocumentFactory());
+    }
+
+    /**
+     * Create the result for two byte-identical files where only the number
+     * of pages is determined without rendering - the document is parsed as
+     * leniently as for a regular comparison.
+     */
+    private PdfDocumentComparatorResult compareIdenticalFiles(String referenceName, File referenceFile, String documentName) throws Exception {
+        int nrOfPages;
+        PDDocument document = createPDDocument(new FileDataSource(referenceFile));
+
+        try {
+            nrOfPages = document.getNumberOfPages();
+        } finally {
+            document.close();
+        }
+
+        List<ImageComparatorResult> imageDifferResultList = new ArrayList<ImageComparatorResult>();
+
+        for (int i = 0; i < nrOfPages; i++) {
+            imageDifferResultList.add(new ImageComparatorResult(true, null));
+        }
+
+        PdfDocumentComparatorResult result = new PdfDocumentComparatorResult(referenceName, nrOfPages, documentName, nrOfPages, imageDifferResultList);
+        recordResult(result);
+        return result;
+    }
+
+    /**
+     * Compare the PDF documents of the reference directory with the documents
+     * having the same relative path in the document directory.
+     *
+     * @param referenceDirectory the directory of the reference documents
+     * @param documentDirectory  the directory of the current documents
+     * @return the results in the order of the reference documents
+     * @throws Exception the comparison failed
+     */
     public PdfDocumentComparatorResults compareDirectories(File referenceDirectory, File documentDirectory) throws Exception {
+        PdfDocumentComparatorResults result = new PdfDocumentComparatorResults();
+        compareDirectories(referenceDirectory, documentDirectory, result, null);
+        return result;
+    }
+
+    /**
+     * Compare the documents of two directories while passing each result to the
+     * listener as soon as it is available instead of keeping all results, i.e.
+     * the memory consumption does not depend on the number of documents.
+     *
+     * @param referenceDirectory the directory of the reference documents
+     * @param documentDirectory  the directory of the current documents
+     * @param listener           receives the result of each document
+     * @return the running totals of the results without the results themselves
+     * @throws Exception the comparison failed
+     */
+    public PdfDocumentComparatorResults compareDirectories(File referenceDirectory, File documentDirectory, PdfDocumentComparatorListener listener) throws Exception {
+        assert listener != null : "No listener provided";
+        PdfDocumentComparatorResults result = new PdfDocumentComparatorResults(true);
+        compareDirectories(referenceDirectory, documentDirectory, result, listener);
+        return result;
+    }
+
+    private void compareDirectories(File referenceDirectory, File documentDirectory, PdfDocumentComparatorResults results, PdfDocumentComparatorListener listener) throws Exception {
         if (!referenceDirectory.exists()) {
             throw new FileNotFoundException(referenceDirectory.getAbsolutePath());
         }
@@ -88,25 +988,168 @@ public class PdfDocumentComparator {
             throw new FileNotFoundException(documentDirectory.getAbsolutePath());
         }
 
-        List<PdfDocumentComparatorResult> result = new ArrayList<PdfDocumentComparatorResult>();
+        DirectoryComparison directoryComparison = new DirectoryComparison(documentDirectory, results, listener);
+
+        try {
+            Path referencePath = referenceDirectory.toPath();
+            compareDirectory(referencePath, referencePath, directoryComparison);
+            directoryComparison.finish();
+        } finally {
+            directoryComparison.close();
+        }
+    }
+
+    /**
+     * Pass the PDF documents of a directory to the comparison as soon as they
+     * are found - only the entries of the current directory are kept and sorted
+     * to process the documents in a fixed order independent of the file system.
+     */
+    private void compareDirectory(Path referenceDirectory, Path directory, DirectoryComparison directoryComparison) throws Exception {
+        List<Path> fileList = new ArrayList<Path>();
+        List<Path> directoryList = new ArrayList<Path>();
+        DirectoryStream<Path> directoryStream = Files.newDirectoryStream(directory);
+
+        try {
+            for (Path path : directoryStream) {
+                if (Files.isRegularFile(path) && path.getFileName().toString().toLowerCase().endsWith(".pdf")) {
+                    if (sortedTraversal) {
+                        fileList.add(path);
+                    } else {
+                        compareFile(referenceDirectory, path, directoryComparison);
+                    }
+                } else if (recursive && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                    directoryList.add(path);
+                }
+            }
+        } finally {
+            directoryStream.close();
+        }
+
+        if (sortedTraversal) {
+            Collections.sort(fileList);
+            Collections.sort(directoryList);
+        }
+
+        for (Path path : fileList) {
+            compareFile(referenceDirectory, path, directoryComparison);
+        }
+
+        for (Path path : directoryList) {
+            compareDirectory(referenceDirectory, path, directoryComparison);
+        }
+    }
+
+    private static void compareFile(Path referenceDirectory, Path path, DirectoryComparison directoryComparison) throws Exception {
+        String relativePath = referenceDirectory.relativize(path).toString().replace(File.separatorChar, '/');
+        directoryComparison.compare(path.toFile(), relativePath);
+    }
+
+    private static void onResult(PdfDocumentComparatorResult pdfDocumentComparatorResult, PdfDocumentComparatorResults results, PdfDocumentComparatorListener listener) throws Exception {
+        results.add(pdfDocumentComparatorResult);
+
+        if (listener != null) {
+            listener.onResult(pdfDocumentComparatorResult);
+        }
+    }
 
-        // get all PDF documents in the given directory
+    /**
+     * Compares the documents passed by the directory traversal either directly
+     * or using the executor service while keeping the results in the order of
+     * the reference files - only a window of comparisons is submitted at any
+     * time so that neither the found files nor finished results are piling up.
+     */
+    private class DirectoryComparison {
 
-        File[] referenceFileList = referenceDirectory.listFiles(new FileFilter() {
-            @Override
-            public boolean accept(File pathname) {
-                return pathname.isFile() && pathname.getName().toLowerCase().endsWith(".pdf");
+        private final File documentDirectory;
+        private final PdfDocumentComparatorResults results;
+        private final PdfDocumentComparatorListener listener;
+        private final ExecutorService currExecutorService;
+        private final LinkedList<Future<PdfDocumentComparatorResult>> futureList;
+        private final int maxNrOfPendingComparisons;
+
+        DirectoryComparison(File documentDirectory, PdfDocumentComparatorResults results, PdfDocumentComparatorListener listener) {
+            this.documentDirectory = documentDirectory;
+            this.results = results;
+            this.listener = listener;
+            this.futureList = new LinkedList<Future<PdfDocumentComparatorResult>>();
+
+            if (executorService == null && nrOfThreads == 1) {
+                this.currExecutorService = null;
+                this.maxNrOfPendingComparisons = 0;
+            } else {
+                this.currExecutorService = (executorService != null ? executorService : Executors.newFixedThreadPool(nrOfThreads));
+                this.maxNrOfPendingComparisons = COMPARISONS_PER_THREAD * (executorService != null ? Math.max(nrOfThreads, Runtime.getRuntime().availableProcessors()) : nrOfThreads);
+            }
+        }
+
+        void compare(final File referenceFile, final String relativePath) throws Exception {
+            if (nrOfShards > 1 && getShardIndex(relativePath, nrOfShards) != shardIndex) {
+                return;
+            }
+
+            if (currExecutorService == null) {
+                onResult(compareFiles(relativePath, referenceFile, relativePath, new File(documentDirectory, relativePath)), results, listener);
+                return;
             }
-        });
 
-        // compare each reference document with the current one
+            if (futureList.size() >= maxNrOfPendingComparisons) {
+                onResult(getResult(futureList.removeFirst()), results, listener);
+            }
 
-        for (File referenceFile : referenceFileList) {
-            File currDocumentFile = new File(documentDirectory, referenceFile.getName());
-            result.add(compareFiles(referenceFile, currDocumentFile));
+            futureList.add(currExecutorService.submit(new Callable<PdfDocumentComparatorResult>() {
+                @Override
+                public PdfDocumentComparatorResult call() throws Exception {
+                    return compareFiles(relativePath, referenceFile, relativePath, new File(documentDirectory, relativePath));
+                }
+            }));
         }
 
-        return new PdfDocumentComparatorResults(result);
+        void finish() throws Exception {
+            while (!futureList.isEmpty()) {
+                onResult(getResult(futureList.removeFirst()), results, listener);
+            }
+        }
+
+        void close() {
+            for (Future<PdfDocumentComparatorResult> future : futureList) {
+                future.cancel(true);
+            }
+            if (currExecutorService != null && currExecutorService != executorService) {
+                currExecutorService.shutdownNow();
+            }
+        }
+    }
+
+    private static <T> T getResult(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw e;
+            }
+        }
     }
 
+    /**
+     * File data source with a name different from the file name.
+     */
+    private static class NamedFileDataSource extends FileDataSource {
+
+        private final String name;
+
+        NamedFileDataSource(String name, File file) {
+            super(file);
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+    }
 }
@@ -0,0 +1,28 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.pdf;
+
+/**
+ * Receives the result of each compared document as soon as it is available,
+ * e.g. to write the diff images and to discard the result afterwards. The
+ * results are delivered in the order of the reference documents and never
+ * concurrently.
+ */
+public interface PdfDocumentComparatorListener {
+
+    void onResult(PdfDocumentComparatorResult pdfDocumentComparatorResult) throws Exception;
+}
@@ -0,0 +1,317 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.pdf;
+
+import org.github.jipsg.common.image.compare.ImageComparatorResult;
+import org.github.jipsg.common.io.FileDigestUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Persists the verdict of each compared pair of documents together with the
+ * size, modification time and digest of both files so that an incremental
+ * run only compares pairs whose files or comparison settings changed. Each
+ * pair is stored in its own properties file which is replaced atomically,
+ * i.e. an interrupted run resumes with the pairs already compared.
+ */
+public class PdfDocumentComparatorManifest {
+
+    private static final String FILE_EXTENSION = ".properties";
+
+    /**
+     * The directory containing one properties file per pair
+     */
+    private final File directory;
+
+    public PdfDocumentComparatorManifest(File directory) {
+        assert directory != null : "No directory provided";
+        this.directory = directory;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Get the stored result of a pair if neither the files nor the settings
+     * changed - the result contains the page verdicts but no diff images.
+     * Files with a new modification time but the same digest are considered
+     * unchanged.
+     *
+     * @param name          the unique name of the pair, e.g. the name of the reference file
+     * @param referenceFile the reference file
+     * @param documentFile  the current file
+     * @param settings      the comparison settings affecting the verdicts
+     * @return the stored result or null if the pair must be compared
+     * @throws IOException reading the manifest or the files failed
+     */
+    public PdfDocumentComparatorResult getResult(String name, File referenceFile, File documentFile, String settings) throws IOException {
+        Properties properties = load(name);
+
+        if (properties == null || !settings.equals(properties.getProperty("settings"))) {
+            return null;
+        }
+
+        boolean isReferenceModified = isModified(properties, "reference", referenceFile);
+        boolean isDocumentModified = isModified(properties, "document", documentFile);
+
+        if (!isUnchanged(properties, "reference", referenceFile, isReferenceModified) || !isUnchanged(properties, "document", documentFile, isDocumentModified)) {
+            return null;
+        }
+
+        // keep the new modification times to avoid calculating the digests again
+
+        if (isReferenceModified || isDocumentModified) {
+            setFileProperties(properties, "reference", new FileState(referenceFile, properties.getProperty("reference.digest")));
+            setFileProperties(properties, "document", new FileState(documentFile, properties.getProperty("document.digest")));
+            store(name, properties);
+        }
+
+        return toResult(properties);
+    }
+
+    /**
+     * Store the result of a pair - results with an error message are not stored.
+     * The states of the files must be captured before comparing them so that a
+     * file changed during the comparison is compared again by the next run.
+     *
+     * @param name                        the unique name of the pair, e.g. the name of the reference file
+     * @param referenceFileState          the state of the reference file before the comparison
+     * @param documentFileState           the state of the current file before the comparison
+     * @param settings                    the comparison settings affecting the verdicts
+     * @param pdfDocumentComparatorResult the result of comparing the files
+     * @throws IOException writing the manifest failed
+     */
+    public void putResult(String name, FileState referenceFileState, FileState documentFileState, String settings, PdfDocumentComparatorResult pdfDocumentComparatorResult) throws IOException {
+        if (pdfDocumentComparatorResult.hasErrorMessage()) {
+            return;
+        }
+
+        Properties properties = new Properties();
+        StringBuilder verdicts = new StringBuilder();
+
+        for (ImageComparatorResult imageComparatorResult : pdfDocumentComparatorResult.getImageDifferResultList()) {
+            verdicts.append(imageComparatorResult.isIdentical() ? '1' : '0');
+        }
+
+        properties.setProperty("name", name);
+        properties.setProperty("settings", settings);
+        setFileProperties(properties, "reference", referenceFileState);
+        setFileProperties(properties, "document", documentFileState);
+        properties.setProperty("reference.name", pdfDocumentComparatorResult.getReferenceName());
+        properties.setProperty("reference.pages", String.valueOf(pdfDocumentComparatorResult.getReferenceNrOfPages()));
+        properties.setProperty("document.name", pdfDocumentComparatorResult.getDocumentName());
+        properties.setProperty("document.pages", String.valueOf(pdfDocumentComparatorResult.getDocumentNrOfPages()));
+        properties.setProperty("verdicts", verdicts.toString());
+
+        if (pdfDocumentComparatorResult.hasPageAlignment()) {
+            PdfPageAlignment pageAlignment = pdfDocumentComparatorResult.getPageAlignment();
+            List<Integer> referencePageIndexList = new ArrayList<Integer>();
+            List<Integer> documentPageIndexList = new ArrayList<Integer>();
+            for (int i = 0; i < pageAlignment.getNrOfPagePairs(); i++) {
+                referencePageIndexList.add(pageAlignment.getReferencePageIndex(i));
+                documentPageIndexList.add(pageAlignment.getDocumentPageIndex(i));
+            }
+            properties.setProperty("alignment.reference", join(referencePageIndexList));
+            properties.setProperty("alignment.document", join(documentPageIndexList));
+            properties.setProperty("alignment.removed", join(pageAlignment.getRemovedPageList()));
+            properties.setProperty("alignment.inserted", join(pageAlignment.getInsertedPageList()));
+        }
+
+        store(name, properties);
+    }
+
+    private static PdfDocumentComparatorResult toResult(Properties properties) {
+        List<ImageComparatorResult> imageDifferResultList = new ArrayList<ImageComparatorResult>();
+        String verdicts = properties.getProperty("verdicts");
+
+        for (int i = 0; i < verdicts.length(); i++) {
+            imageDifferResultList.add(new ImageComparatorResult(verdicts.charAt(i) == '1', null));
+        }
+
+        String referenceName = properties.getProperty("reference.name");
+        int referenceNrOfPages = Integer.parseInt(properties.getProperty("reference.pages"));
+        String documentName = properties.getProperty("document.name");
+        int documentNrOfPages = Integer.parseInt(properties.getProperty("document.pages"));
+
+        if (properties.containsKey("alignment.reference")) {
+            PdfPageAlignment pageAlignment = new PdfPageAlignment(
+                    split(properties.getProperty("alignment.reference")),
+                    split(properties.getProperty("alignment.document")),
+                    split(properties.getProperty("alignment.removed")),
+                    split(properties.getProperty("alignment.inserted")));
+            return new PdfDocumentComparatorResult(referenceName, referenceNrOfPages, documentName, documentNrOfPages, imageDifferResultList, pageAlignment);
+        } else {
+            return new PdfDocumentComparatorResult(referenceName, referenceNrOfPages, documentName, documentNrOfPages, imageDifferResultList);
+        }
+    }
+
+    private static boolean isModified(Properties properties, String prefix, File file) {
+        return !String.valueOf(file.lastModified()).equals(properties.getProperty(prefix + ".lastModified"));
+    }
+
+    private static boolean isUnchanged(Properties properties, String prefix, File file, boolean isModified) throws IOException {
+        if (!String.valueOf(file.length()).equals(properties.getProperty(prefix + ".length"))) {
+            return false;
+        }
+
+        return !isModified || digest(file).equals(properties.getProperty(prefix + ".digest"));
+    }
+
+    private static void setFileProperties(Properties properties, String prefix, FileState fileState) {
+        properties.setProperty(prefix + ".length", String.valueOf(fileState.getLength()));
+        properties.setProperty(prefix + ".lastModified", String.valueOf(fileState.getLastModified()));
+        properties.setProperty(prefix + ".digest", fileState.getDigest());
+    }
+
+    private static String digest(File file) throws IOException {
+        return FileDigestUtils.toHexString(FileDigestUtils.digest(file, FileDigestUtils.DEFAULT_ALGORITHM));
+    }
+
+    private Properties load(String name) throws IOException {
+        File file = getFile(name);
+
+        if (!file.exists()) {
+            return null;
+        }
+
+        Properties result = new Properties();
+        InputStream is = new FileInputStream(file);
+
+        try {
+            result.load(is);
+        } finally {
+            is.close();
+        }
+
+        return result;
+    }
+
+    /**
+     * Write the properties to a synced temporary file which replaces the
+     * existing file atomically so that a crash never leaves a partial file.
+     */
+    private void store(String name, Properties properties) throws IOException {
+        File file = getFile(name);
+        directory.mkdirs();
+        File tempFile = File.createTempFile("manifest-", ".tmp", directory);
+
+        try {
+            FileOutputStream fos = new FileOutputStream(tempFile);
+            try {
+                properties.store(fos, null);
+                fos.getFD().sync();
+            } finally {
+                fos.close();
+            }
+
+            try {
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            if (tempFile.exists()) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    private File getFile(String name) throws IOException {
+        return new File(directory, URLEncoder.encode(name, "UTF-8") + FILE_EXTENSION);
+    }
+
+    static String join(List<Integer> list) {
+        StringBuilder sb = new StringBuilder();
+        for (Integer value : list) {
+            sb.append(sb.length() > 0 ? "," : "").append(value);
+        }
+        return sb.toString();
+    }
+
+    static List<Integer> split(String value) {
+        List<Integer> result = new ArrayList<Integer>();
+        for (String token : value.split(",")) {
+            if (!token.isEmpty()) {
+                result.add(Integer.valueOf(token));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The size, modification time and digest of a file at a certain point in time.
+     */
+    public static class FileState {
+
+        private final long length;
+        private final long lastModified;
+        private final String digest;
+
+        /**
+         * Capture the state of a file - the size and the modification time are
+         * read before the digest so that a concurrent change is detected later.
+         *
+         * @param file the file
+         * @throws IOException reading the file failed
+         */
+        public FileState(File file) throws IOException {
+            this.length = file.length();
+            this.lastModified = file.lastModified();
+            this.digest = digest(file);
+        }
+
+        FileState(File file, String digest) {
+            this.length = file.length();
+            this.lastModified = file.lastModified();
+            this.digest = digest;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public String getDigest() {
+            return digest;
+        }
+
+        /**
+         * Check if two files had the same content.
+         *
+         * @param other the state of the other file
+         * @return true if both files had the same size and digest
+         */
+        public boolean hasSameContent(FileState other) {
+            return length == other.length && digest.equals(other.digest);
+        }
+    }
+}
@@ -19,6 +19,7 @@ package org.github.jipsg.pdf;
 import org.github.jipsg.common.image.compare.ImageComparatorResult;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -51,6 +52,11 @@ public class PdfDocumentComparatorResult {
      */
     private List<ImageComparatorResult> imageDifferResultList;
 
+    /**
+     * The alignment of the pages if inserted and removed pages were detected
+     */
+    private PdfPageAlignment pageAlignment;
+
     /**
      * Error message if the processing failed
      */
@@ -79,12 +85,19 @@ public class PdfDocumentComparatorResult {
         this.imageDifferResultList = imageDifferResultList;
     }
 
+    public PdfDocumentComparatorResult(String referenceName, int referenceNrOfPages, String documentName, int documentNrOfPages, List<ImageComparatorResult> imageDifferResultList, PdfPageAlignment pageAlignment) {
+        this(referenceName, referenceNrOfPages, documentName, documentNrOfPages, imageDifferResultList);
+        assert pageAlignment != null;
+        this.pageAlignment = pageAlignment;
+    }
+
     public boolean isIdentical() {
         boolean hasSameNumberOfPages = hasSameNrOfPages();
         boolean hasIdenticalImages = hasIdenticalImages();
         boolean hasErrorMessage = hasErrorMessage();
+        boolean hasInsertedOrRemovedPages = hasInsertedOrRemovedPages();
 
-        return !hasErrorMessage && hasSameNumberOfPages && hasIdenticalImages;
+        return !hasErrorMessage && hasSameNumberOfPages && hasIdenticalImages && !hasInsertedOrRemovedPages;
     }
 
     public boolean hasErrorMessage() {
@@ -109,6 +122,32 @@ public class PdfDocumentComparatorResult {
         return result;
     }
 
+    public boolean hasPageAlignment() {
+        return pageAlignment != null;
+    }
+
+    public PdfPageAlignment getPageAlignment() {
+        return pageAlignment;
+    }
+
+    public boolean hasInsertedOrRemovedPages() {
+        return hasPageAlignment() && pageAlignment.hasInsertedOrRemovedPages();
+    }
+
+    /**
+     * Get the zero-based indices of document pages missing in the reference document.
+     */
+    public List<Integer> getInsertedPageList() {
+        return (hasPageAlignment() ? pageAlignment.getInsertedPageList() : Collections.<Integer>emptyList());
+    }
+
+    /**
+     * Get the zero-based indices of reference pages missing in the current document.
+     */
+    public List<Integer> getRemovedPageList() {
+        return (hasPageAlignment() ? pageAlignment.getRemovedPageList() : Collections.<Integer>emptyList());
+    }
+
     public String getReferenceName() {
         return referenceName;
     }
@@ -140,6 +179,10 @@ public class PdfDocumentComparatorResult {
         sb.append(", isIdentical=").append(isIdentical());
         sb.append(", hasSameNumberOfPages=").append(hasSameNrOfPages());
         sb.append(", imageDifferResultList=").append(imageDifferResultList);
+        if (hasPageAlignment()) {
+            sb.append(", insertedPageList=").append(getInsertedPageList());
+            sb.append(", removedPageList=").append(getRemovedPageList());
+        }
         sb.append(", errorMessage").append(errorMessage).append('\'');
         sb.append('}');
         return sb.toString();
@@ -18,14 +18,59 @@ package org.github.jipsg.pdf;
 
 import org.github.jipsg.common.image.BufferedImageUtils;
 import org.github.jipsg.common.image.compare.ImageComparatorResult;
+import org.github.jipsg.common.metrics.Metrics;
+import org.github.jipsg.common.metrics.NoopMetrics;
 
+import java.awt.*;
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.util.List;
 
 public class PdfDocumentComparatorResultWriter {
 
     /**
-     * Write the diff images to a directory for visual inspection.
+     * The compression quality of the diff images or a negative value for the default
+     */
+    private float compressionQuality = -1.0f;
+
+    /**
+     * Records the "write" timer of the diff images
+     */
+    private Metrics metrics = NoopMetrics.INSTANCE;
+
+    public float getCompressionQuality() {
+        return compressionQuality;
+    }
+
+    /**
+     * Set the compression quality of the diff images if supported by the image
+     * writer, e.g. a high quality results in less compression and faster encoding.
+     * The PNG writer of the JDK requires Java 9 or later, otherwise the quality is
+     * ignored - override {@link #writeImage} to use a different PNG encoder.
+     *
+     * @param compressionQuality the compression quality between 0 and 1 or a negative value for the default
+     * @return this instance
+     */
+    public PdfDocumentComparatorResultWriter setCompressionQuality(float compressionQuality) {
+        assert compressionQuality <= 1.0f : "invalid compressionQuality : " + compressionQuality;
+        this.compressionQuality = compressionQuality;
+        return this;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    public PdfDocumentComparatorResultWriter setMetrics(Metrics metrics) {
+        assert metrics != null : "No metrics provided";
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Write the diff images to a directory for visual inspection - pages
+     * without a diff image are skipped. A diff image cropped to the differences
+     * contains its offset within the page in the file name, e.g. "page-0@120,48.png".
      *
      * @param baseDirectory               the base directory for output
      * @param directoryName               the directory to create beneath the base directory
@@ -43,17 +88,72 @@ public class PdfDocumentComparatorResultWriter {
 
         for (int i = 0; i < imageDifferResultList.size(); i++) {
             ImageComparatorResult imageDifferResult = imageDifferResultList.get(i);
-            File currImageFile = new File(directory, "page-" + i + ".png");
-            BufferedImageUtils.writeBufferedImage(imageDifferResult.getBufferedImage(), "png", currImageFile);
+            if (imageDifferResult.hasBufferedImage()) {
+                int pageIndex = (pdfDocumentComparatorResult.hasPageAlignment() ? pdfDocumentComparatorResult.getPageAlignment().getReferencePageIndex(i) : i);
+                File currImageFile = new File(directory, getImageFileName(pageIndex, imageDifferResult.getOffset()));
+                writeImage(imageDifferResult.getBufferedImage(), currImageFile);
+            }
         }
     }
 
     public void writeToDirectory(File baseDirectory, PdfDocumentComparatorResults pdfDocumentComparatorResults, boolean skipIdenticalDocuments) throws Exception {
         for (PdfDocumentComparatorResult pdfDocumentComparatorResult : pdfDocumentComparatorResults.getPdfDocumentComparatorResultList()) {
-            if (!pdfDocumentComparatorResult.isIdentical() || !skipIdenticalDocuments) {
-                String directoryName = pdfDocumentComparatorResult.getReferenceName();
-                writeToDirectory(baseDirectory, directoryName, pdfDocumentComparatorResult);
+            writeToDirectory(baseDirectory, pdfDocumentComparatorResult, skipIdenticalDocuments);
+        }
+    }
+
+    /**
+     * Create a listener writing each result as soon as it is available.
+     *
+     * @param baseDirectory          the base directory for output
+     * @param skipIdenticalDocuments don't write identical documents
+     * @return the listener
+     */
+    public PdfDocumentComparatorListener createListener(final File baseDirectory, final boolean skipIdenticalDocuments) {
+        return new PdfDocumentComparatorListener() {
+            @Override
+            public void onResult(PdfDocumentComparatorResult pdfDocumentComparatorResult) throws Exception {
+                writeToDirectory(baseDirectory, pdfDocumentComparatorResult, skipIdenticalDocuments);
             }
+        };
+    }
+
+    private void writeToDirectory(File baseDirectory, PdfDocumentComparatorResult pdfDocumentComparatorResult, boolean skipIdenticalDocuments) throws Exception {
+        if (!pdfDocumentComparatorResult.isIdentical() || !skipIdenticalDocuments) {
+            String directoryName = pdfDocumentComparatorResult.getReferenceName();
+            writeToDirectory(baseDirectory, directoryName, pdfDocumentComparatorResult);
+        }
+    }
+
+    /**
+     * The file name of a diff image including the offset of a cropped diff image.
+     *
+     * @param pageIndex the index of the reference page
+     * @param offset    the offset of the diff image within the page
+     * @return the file name
+     */
+    static String getImageFileName(int pageIndex, Point offset) {
+        if (offset.x == 0 && offset.y == 0) {
+            return "page-" + pageIndex + ".png";
+        } else {
+            return "page-" + pageIndex + "@" + offset.x + "," + offset.y + ".png";
+        }
+    }
+
+    /**
+     * Write a single diff image - can be overridden to plug in a different encoder.
+     *
+     * @param bufferedImage the diff image
+     * @param file          the PNG file to write
+     * @throws Exception writing the image failed
+     */
+    protected void writeImage(BufferedImage bufferedImage, File file) throws Exception {
+        long startTime = metrics.startTimer();
+
+        try {
+            BufferedImageUtils.writeBufferedImage(bufferedImage, "png", file, compressionQuality);
+        } finally {
+            metrics.stopTimer("write", startTime);
         }
     }
 }
@@ -27,25 +27,67 @@ public class PdfDocumentComparatorResults {
 
     private List<PdfDocumentComparatorResult> pdfDocumentComparatorResultList;
 
+    /**
+     * Only count the added results instead of keeping them in the list
+     */
+    private final boolean countOnly;
+
+    /**
+     * The running totals of the added results if only counting them
+     */
+    private int nrOfResults;
+
+    private int nrOfMatches;
+
+    private int nrOfErrors;
+
     public PdfDocumentComparatorResults() {
+        this(false);
+    }
+
+    /**
+     * Create an instance which might only keep the running totals of the added
+     * results, e.g. when the results are passed to a listener.
+     *
+     * @param countOnly don't keep the added results
+     */
+    public PdfDocumentComparatorResults(boolean countOnly) {
         this.pdfDocumentComparatorResultList = new ArrayList<PdfDocumentComparatorResult>();
+        this.countOnly = countOnly;
     }
 
     public PdfDocumentComparatorResults(List<PdfDocumentComparatorResult> pdfDocumentComparatorResultList) {
         this.pdfDocumentComparatorResultList = pdfDocumentComparatorResultList;
+        this.countOnly = false;
     }
 
     public PdfDocumentComparatorResults add(PdfDocumentComparatorResult pdfDocumentComparatorResult) {
-        this.pdfDocumentComparatorResultList.add(pdfDocumentComparatorResult);
+        if (countOnly) {
+            this.nrOfResults++;
+            this.nrOfMatches += (pdfDocumentComparatorResult.isIdentical() ? 1 : 0);
+            this.nrOfErrors += (pdfDocumentComparatorResult.hasErrorMessage() ? 1 : 0);
+        } else {
+            this.pdfDocumentComparatorResultList.add(pdfDocumentComparatorResult);
+        }
+
         return this;
     }
 
+    /**
+     * Get the added results.
+     *
+     * @return the results or an empty list if only the totals are counted
+     */
     public List<PdfDocumentComparatorResult> getPdfDocumentComparatorResultList() {
         return pdfDocumentComparatorResultList;
     }
 
+    public boolean isCountOnly() {
+        return countOnly;
+    }
+
     public int size() {
-        return this.pdfDocumentComparatorResultList.size();
+        return (countOnly ? nrOfResults : this.pdfDocumentComparatorResultList.size());
     }
 
     public boolean isIdentical() {
@@ -57,6 +99,10 @@ public class PdfDocumentComparatorResults {
     }
 
     public int getNrOfErrors() {
+        if (countOnly) {
+            return nrOfErrors;
+        }
+
         int result = 0;
 
         for (PdfDocumentComparatorResult temp : this.pdfDocumentComparatorResultList) {
@@ -67,6 +113,10 @@ public class PdfDocumentComparatorResults {
     }
 
     public int getNrOfMatches() {
+        if (countOnly) {
+            return nrOfMatches;
+        }
+
         int result = 0;
 
         for (PdfDocumentComparatorResult temp : this.pdfDocumentComparatorResultList) {
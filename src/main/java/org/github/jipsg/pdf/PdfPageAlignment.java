@@ -0,0 +1,167 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.pdf;
+
+import org.github.jipsg.common.image.BufferedImageHash;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Aligns the pages of a reference and a current document based on page
+ * fingerprints, i.e. perceptual hashes, to detect inserted and removed pages.
+ * The alignment minimizes the edit distance where pairing two dissimilar
+ * pages and inserting or removing a page cost one step each.
+ */
+public class PdfPageAlignment {
+
+    /**
+     * Zero-based indices of the reference pages paired with a document page
+     */
+    private final List<Integer> referencePageIndexList;
+
+    /**
+     * Zero-based indices of the document pages paired with a reference page
+     */
+    private final List<Integer> documentPageIndexList;
+
+    /**
+     * Zero-based indices of reference pages missing in the current document
+     */
+    private final List<Integer> removedPageList;
+
+    /**
+     * Zero-based indices of document pages missing in the reference document
+     */
+    private final List<Integer> insertedPageList;
+
+    private PdfPageAlignment() {
+        this.referencePageIndexList = new ArrayList<Integer>();
+        this.documentPageIndexList = new ArrayList<Integer>();
+        this.removedPageList = new ArrayList<Integer>();
+        this.insertedPageList = new ArrayList<Integer>();
+    }
+
+    /**
+     * Restore a previously calculated alignment, e.g. from a manifest.
+     */
+    PdfPageAlignment(List<Integer> referencePageIndexList, List<Integer> documentPageIndexList, List<Integer> removedPageList, List<Integer> insertedPageList) {
+        assert referencePageIndexList.size() == documentPageIndexList.size() : "Different number of paired pages";
+        this.referencePageIndexList = new ArrayList<Integer>(referencePageIndexList);
+        this.documentPageIndexList = new ArrayList<Integer>(documentPageIndexList);
+        this.removedPageList = new ArrayList<Integer>(removedPageList);
+        this.insertedPageList = new ArrayList<Integer>(insertedPageList);
+    }
+
+    /**
+     * Align the pages of two documents.
+     *
+     * @param referenceFingerprints the page fingerprints of the reference document
+     * @param documentFingerprints  the page fingerprints of the current document
+     * @param maxDistance           the maximum fingerprint distance of similar pages
+     * @return the alignment
+     */
+    public static PdfPageAlignment align(long[] referenceFingerprints, long[] documentFingerprints, int maxDistance) {
+        int n = referenceFingerprints.length;
+        int m = documentFingerprints.length;
+        int[][] costs = new int[n + 1][m + 1];
+
+        for (int i = 0; i <= n; i++) {
+            costs[i][0] = i;
+        }
+
+        for (int j = 0; j <= m; j++) {
+            costs[0][j] = j;
+        }
+
+        for (int i = 1; i <= n; i++) {
+            for (int j = 1; j <= m; j++) {
+                int pairCost = costs[i - 1][j - 1] + getPairCost(referenceFingerprints[i - 1], documentFingerprints[j - 1], maxDistance);
+                int gapCost = Math.min(costs[i - 1][j], costs[i][j - 1]) + 1;
+                costs[i][j] = Math.min(pairCost, gapCost);
+            }
+        }
+
+        // trace back the alignment preferring to pair pages
+
+        PdfPageAlignment result = new PdfPageAlignment();
+        int i = n;
+        int j = m;
+
+        while (i > 0 || j > 0) {
+            if (i > 0 && j > 0 && costs[i][j] == costs[i - 1][j - 1] + getPairCost(referenceFingerprints[i - 1], documentFingerprints[j - 1], maxDistance)) {
+                result.referencePageIndexList.add(i - 1);
+                result.documentPageIndexList.add(j - 1);
+                i--;
+                j--;
+            } else if (i > 0 && costs[i][j] == costs[i - 1][j] + 1) {
+                result.removedPageList.add(i - 1);
+                i--;
+            } else {
+                result.insertedPageList.add(j - 1);
+                j--;
+            }
+        }
+
+        Collections.reverse(result.referencePageIndexList);
+        Collections.reverse(result.documentPageIndexList);
+        Collections.reverse(result.removedPageList);
+        Collections.reverse(result.insertedPageList);
+
+        return result;
+    }
+
+    public int getNrOfPagePairs() {
+        return referencePageIndexList.size();
+    }
+
+    public int getReferencePageIndex(int pagePairIndex) {
+        return referencePageIndexList.get(pagePairIndex);
+    }
+
+    public int getDocumentPageIndex(int pagePairIndex) {
+        return documentPageIndexList.get(pagePairIndex);
+    }
+
+    public List<Integer> getRemovedPageList() {
+        return removedPageList;
+    }
+
+    public List<Integer> getInsertedPageList() {
+        return insertedPageList;
+    }
+
+    public boolean hasInsertedOrRemovedPages() {
+        return !removedPageList.isEmpty() || !insertedPageList.isEmpty();
+    }
+
+    private static int getPairCost(long referenceFingerprint, long documentFingerprint, int maxDistance) {
+        return (BufferedImageHash.distance(referenceFingerprint, documentFingerprint) <= maxDistance ? 0 : 1);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("PdfPageAlignment{");
+        sb.append("referencePageIndexList=").append(referencePageIndexList);
+        sb.append(", documentPageIndexList=").append(documentPageIndexList);
+        sb.append(", removedPageList=").append(removedPageList);
+        sb.append(", insertedPageList=").append(insertedPageList);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,456 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.pdf;
+
+import org.github.jipsg.common.image.compare.ImageComparatorResult;
+import org.github.jipsg.pdfbox.PdfResourceCache;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits the comparison of two directories into shards, each one being compared
+ * by a separate local worker process, e.g. to use all cores of a large machine
+ * without a single huge heap. The documents are partitioned by the hash of their
+ * relative path, each worker writes its results to a file in the work directory
+ * and the results of all shards are merged afterwards - the merged results are
+ * ordered like a sorted directory traversal and contain no diff images.
+ */
+public class PdfShardedDirectoryComparator {
+
+    private static final String ENCODING = "UTF-8";
+
+    private static final long POLL_INTERVAL_MILLIS = 100;
+
+    /**
+     * The number of worker processes
+     */
+    private final int nrOfShards;
+
+    /**
+     * The directory for the result and log files of the workers
+     */
+    private final File workDirectory;
+
+    /**
+     * Additional options of the worker JVMs, e.g. "-Xmx512m"
+     */
+    private final List<String> javaOptionList;
+
+    /**
+     * The settings of the "PdfDocumentComparator" of each worker
+     */
+    private final Map<String, String> optionMap;
+
+    public PdfShardedDirectoryComparator(int nrOfShards, File workDirectory) {
+        assert nrOfShards > 0 : "invalid nrOfShards : " + nrOfShards;
+        assert workDirectory != null : "No workDirectory provided";
+        this.nrOfShards = nrOfShards;
+        this.workDirectory = workDirectory;
+        this.javaOptionList = new ArrayList<String>();
+        this.optionMap = new LinkedHashMap<String, String>();
+    }
+
+    public PdfShardedDirectoryComparator setJavaOptions(String... javaOptions) {
+        this.javaOptionList.clear();
+        this.javaOptionList.addAll(Arrays.asList(javaOptions));
+        return this;
+    }
+
+    public PdfShardedDirectoryComparator setNrOfThreadsPerShard(int nrOfThreads) {
+        optionMap.put("nrOfThreads", String.valueOf(nrOfThreads));
+        return this;
+    }
+
+    public PdfShardedDirectoryComparator setRecursive(boolean recursive) {
+        optionMap.put("recursive", String.valueOf(recursive));
+        return this;
+    }
+
+    public PdfShardedDirectoryComparator setDigestCheck(boolean digestCheck) {
+        optionMap.put("digestCheck", String.valueOf(digestCheck));
+        return this;
+    }
+
+    public PdfShardedDirectoryComparator setResolution(int resolution) {
+        optionMap.put("resolution", String.valueOf(resolution));
+        return this;
+    }
+
+    public PdfShardedDirectoryComparator setCoarseResolution(int coarseResolution) {
+        optionMap.put("coarseResolution", String.valueOf(coarseResolution));
+        return this;
+    }
+
+    public PdfShardedDirectoryComparator setColor(String color) {
+        optionMap.put("color", color);
+        return this;
+    }
+
+    public PdfShardedDirectoryComparator setPageAlignment(boolean pageAlignment) {
+        optionMap.put("pageAlignment", String.valueOf(pageAlignment));
+        return this;
+    }
+
+    /**
+     * Let each worker share parsed fonts and decoded images between its documents.
+     *
+     * @param maxNrOfFonts      the maximum number of cached fonts
+     * @param maxNrOfImageBytes the maximum number of bytes of the cached images
+     * @return this instance
+     */
+    public PdfShardedDirectoryComparator setResourceCache(int maxNrOfFonts, long maxNrOfImageBytes) {
+        optionMap.put("resourceCache", maxNrOfFonts + ":" + maxNrOfImageBytes);
+        return this;
+    }
+
+    /**
+     * Let the workers write the diff images of different documents.
+     *
+     * @param diffDirectory the base directory of the diff images
+     * @return this instance
+     */
+    public PdfShardedDirectoryComparator setDiffDirectory(File diffDirectory) {
+        optionMap.put("diffDirectory", diffDirectory.getAbsolutePath());
+        return this;
+    }
+
+    /**
+     * Compare the directories using one worker process per shard.
+     *
+     * @param referenceDirectory the directory of the reference documents
+     * @param documentDirectory  the directory of the current documents
+     * @return the merged results of all shards
+     * @throws Exception the comparison failed
+     */
+    public PdfDocumentComparatorResults compareDirectories(File referenceDirectory, File documentDirectory) throws Exception {
+        if (!referenceDirectory.exists()) {
+            throw new FileNotFoundException(referenceDirectory.getAbsolutePath());
+        }
+
+        if (!documentDirectory.exists()) {
+            throw new FileNotFoundException(documentDirectory.getAbsolutePath());
+        }
+
+        workDirectory.mkdirs();
+        List<Process> processList = new ArrayList<Process>();
+        List<File> resultFileList = new ArrayList<File>();
+
+        try {
+            for (int i = 0; i < nrOfShards; i++) {
+                File resultFile = new File(workDirectory, "shard-" + i + ".results");
+                File logFile = new File(workDirectory, "shard-" + i + ".log");
+                resultFile.delete();
+                resultFileList.add(resultFile);
+                processList.add(startWorker(referenceDirectory, documentDirectory, i, resultFile, logFile));
+            }
+
+            waitForWorkers(processList);
+        } finally {
+            for (Process process : processList) {
+                process.destroy();
+            }
+        }
+
+        return merge(resultFileList);
+    }
+
+    /**
+     * Poll all workers so that a failing worker is reported immediately instead
+     * of after the workers started before it have finished.
+     */
+    private void waitForWorkers(List<Process> processList) throws IOException, InterruptedException {
+        boolean[] finished = new boolean[processList.size()];
+        int nrOfFinishedWorkers = 0;
+
+        while (nrOfFinishedWorkers < processList.size()) {
+            for (int i = 0; i < processList.size(); i++) {
+                if (!finished[i]) {
+                    Integer exitCode = getExitCode(processList.get(i));
+                    if (exitCode != null) {
+                        if (exitCode != 0) {
+                            throw new IOException("The worker of shard " + i + " failed with exit code " + exitCode + " - see " + new File(workDirectory, "shard-" + i + ".log").getAbsolutePath());
+                        }
+                        finished[i] = true;
+                        nrOfFinishedWorkers++;
+                    }
+                }
+            }
+
+            if (nrOfFinishedWorkers < processList.size()) {
+                Thread.sleep(POLL_INTERVAL_MILLIS);
+            }
+        }
+    }
+
+    private static Integer getExitCode(Process process) {
+        try {
+            return process.exitValue();
+        } catch (IllegalThreadStateException e) {
+            // still running
+            return null;
+        }
+    }
+
+    private Process startWorker(File referenceDirectory, File documentDirectory, int shardIndex, File resultFile, File logFile) throws IOException {
+        List<String> commandList = new ArrayList<String>();
+        commandList.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getAbsolutePath());
+        commandList.addAll(javaOptionList);
+        commandList.add("-cp");
+        commandList.add(System.getProperty("java.class.path"));
+        commandList.add(PdfShardedDirectoryComparator.class.getName());
+        commandList.add(referenceDirectory.getAbsolutePath());
+        commandList.add(documentDirectory.getAbsolutePath());
+        commandList.add(String.valueOf(shardIndex));
+        commandList.add(String.valueOf(nrOfShards));
+        commandList.add(resultFile.getAbsolutePath());
+
+        for (Map.Entry<String, String> entry : optionMap.entrySet()) {
+            commandList.add(entry.getKey() + "=" + entry.getValue());
+        }
+
+        ProcessBuilder processBuilder = new ProcessBuilder(commandList);
+        processBuilder.redirectErrorStream(true);
+        processBuilder.redirectOutput(logFile);
+        return processBuilder.start();
+    }
+
+    /**
+     * Merge the result files of the shards in the order of a sorted directory
+     * traversal, i.e. the documents of a directory ordered by name before the
+     * documents of its sub-directories.
+     *
+     * @param resultFileList the result files of all shards
+     * @return the merged results
+     * @throws IOException a result file is missing or can't be read
+     */
+    public static PdfDocumentComparatorResults merge(List<File> resultFileList) throws IOException {
+        List<PdfDocumentComparatorResult> result = new ArrayList<PdfDocumentComparatorResult>();
+
+        for (File resultFile : resultFileList) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(resultFile), ENCODING));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    result.add(decode(line));
+                }
+            } finally {
+                reader.close();
+            }
+        }
+
+        Collections.sort(result, new Comparator<PdfDocumentComparatorResult>() {
+            @Override
+            public int compare(PdfDocumentComparatorResult lhs, PdfDocumentComparatorResult rhs) {
+                return compareTraversalOrder(lhs.getReferenceName(), rhs.getReferenceName());
+            }
+        });
+
+        return new PdfDocumentComparatorResults(result);
+    }
+
+    /**
+     * Compare two relative paths, e.g. "customer/2014/invoice.pdf", the same way
+     * as {@link PdfDocumentComparator#setSortedTraversal} orders the documents.
+     */
+    static int compareTraversalOrder(String lhs, String rhs) {
+        String[] lhsNames = lhs.split("/");
+        String[] rhsNames = rhs.split("/");
+
+        for (int i = 0; i < lhsNames.length && i < rhsNames.length; i++) {
+            boolean isLhsFile = (i == lhsNames.length - 1);
+            boolean isRhsFile = (i == rhsNames.length - 1);
+
+            if (isLhsFile != isRhsFile) {
+                // the files of a directory are compared before its sub-directories
+                return (isLhsFile ? -1 : 1);
+            }
+
+            int result = lhsNames[i].compareTo(rhsNames[i]);
+            if (result != 0) {
+                return result;
+            }
+        }
+
+        return lhsNames.length - rhsNames.length;
+    }
+
+    /**
+     * Entry point of the worker processes comparing a single shard - the result
+     * file is only created when all documents of the shard are compared.
+     * <p>
+     * Arguments: referenceDirectory documentDirectory shardIndex nrOfShards resultFile [name=value ...]
+     *
+     * @param args the command line arguments
+     * @throws Exception the comparison failed
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 5) {
+            System.err.println("Usage: " + PdfShardedDirectoryComparator.class.getName() + " referenceDirectory documentDirectory shardIndex nrOfShards resultFile [name=value ...]");
+            System.exit(1);
+        }
+
+        File referenceDirectory = new File(args[0]);
+        File documentDirectory = new File(args[1]);
+        int shardIndex = Integer.parseInt(args[2]);
+        int nrOfShards = Integer.parseInt(args[3]);
+        File resultFile = new File(args[4]);
+        File tempFile = new File(resultFile.getAbsolutePath() + ".tmp");
+
+        PdfDocumentComparator pdfDocumentComparator = new PdfDocumentComparator().setShard(shardIndex, nrOfShards);
+        File diffDirectory = null;
+
+        for (int i = 5; i < args.length; i++) {
+            String name = args[i].substring(0, args[i].indexOf('='));
+            String value = args[i].substring(args[i].indexOf('=') + 1);
+            if ("nrOfThreads".equals(name)) {
+                pdfDocumentComparator.setNrOfThreads(Integer.parseInt(value));
+            } else if ("recursive".equals(name)) {
+                pdfDocumentComparator.setRecursive(Boolean.parseBoolean(value));
+            } else if ("digestCheck".equals(name)) {
+                pdfDocumentComparator.setDigestCheck(Boolean.parseBoolean(value));
+            } else if ("resolution".equals(name)) {
+                pdfDocumentComparator.setResolution(Integer.parseInt(value));
+            } else if ("coarseResolution".equals(name)) {
+                pdfDocumentComparator.setCoarseResolution(Integer.parseInt(value));
+            } else if ("color".equals(name)) {
+                pdfDocumentComparator.setColor(value);
+            } else if ("pageAlignment".equals(name)) {
+                pdfDocumentComparator.setPageAlignment(Boolean.parseBoolean(value));
+            } else if ("resourceCache".equals(name)) {
+                String[] limits = value.split(":");
+                pdfDocumentComparator.setResourceCache(new PdfResourceCache(Integer.parseInt(limits[0]), Long.parseLong(limits[1])));
+            } else if ("diffDirectory".equals(name)) {
+                diffDirectory = new File(value);
+            } else {
+                throw new IllegalArgumentException("Unknown option : " + args[i]);
+            }
+        }
+
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), ENCODING));
+        final PdfDocumentComparatorListener diffWriterListener = (diffDirectory != null ? new PdfDocumentComparatorResultWriter().createListener(diffDirectory, true) : null);
+
+        try {
+            pdfDocumentComparator.compareDirectories(referenceDirectory, documentDirectory, new PdfDocumentComparatorListener() {
+                @Override
+                public void onResult(PdfDocumentComparatorResult pdfDocumentComparatorResult) throws Exception {
+                    writer.write(encode(pdfDocumentComparatorResult));
+                    writer.write('\n');
+                    if (diffWriterListener != null) {
+                        diffWriterListener.onResult(pdfDocumentComparatorResult);
+                    }
+                }
+            });
+        } finally {
+            writer.close();
+        }
+
+        Files.move(tempFile.toPath(), resultFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Encode a result without diff images as a single line of tab-separated
+     * and URL-encoded fields.
+     */
+    static String encode(PdfDocumentComparatorResult pdfDocumentComparatorResult) throws IOException {
+        StringBuilder verdicts = new StringBuilder();
+        String alignment = "";
+
+        if (!pdfDocumentComparatorResult.hasErrorMessage()) {
+            for (ImageComparatorResult imageComparatorResult : pdfDocumentComparatorResult.getImageDifferResultList()) {
+                verdicts.append(imageComparatorResult.isIdentical() ? '1' : '0');
+            }
+        }
+
+        if (pdfDocumentComparatorResult.hasPageAlignment()) {
+            PdfPageAlignment pageAlignment = pdfDocumentComparatorResult.getPageAlignment();
+            List<Integer> referencePageIndexList = new ArrayList<Integer>();
+            List<Integer> documentPageIndexList = new ArrayList<Integer>();
+            for (int i = 0; i < pageAlignment.getNrOfPagePairs(); i++) {
+                referencePageIndexList.add(pageAlignment.getReferencePageIndex(i));
+                documentPageIndexList.add(pageAlignment.getDocumentPageIndex(i));
+            }
+            alignment = PdfDocumentComparatorManifest.join(referencePageIndexList)
+                    + ";" + PdfDocumentComparatorManifest.join(documentPageIndexList)
+                    + ";" + PdfDocumentComparatorManifest.join(pageAlignment.getRemovedPageList())
+                    + ";" + PdfDocumentComparatorManifest.join(pageAlignment.getInsertedPageList());
+        }
+
+        return URLEncoder.encode(pdfDocumentComparatorResult.getReferenceName(), ENCODING)
+                + "\t" + pdfDocumentComparatorResult.getReferenceNrOfPages()
+                + "\t" + URLEncoder.encode(pdfDocumentComparatorResult.getDocumentName(), ENCODING)
+                + "\t" + pdfDocumentComparatorResult.getDocumentNrOfPages()
+                + "\t" + verdicts
+                + "\t" + URLEncoder.encode(pdfDocumentComparatorResult.hasErrorMessage() ? pdfDocumentComparatorResult.getErrorMessage() : "", ENCODING)
+                + "\t" + alignment;
+    }
+
+    static PdfDocumentComparatorResult decode(String line) throws IOException {
+        String[] fields = line.split("\t", -1);
+
+        if (fields.length != 7) {
+            throw new IOException("Invalid result : " + line);
+        }
+
+        String referenceName = URLDecoder.decode(fields[0], ENCODING);
+        int referenceNrOfPages = Integer.parseInt(fields[1]);
+        String documentName = URLDecoder.decode(fields[2], ENCODING);
+        int documentNrOfPages = Integer.parseInt(fields[3]);
+        String errorMessage = URLDecoder.decode(fields[5], ENCODING);
+
+        if (!errorMessage.isEmpty()) {
+            return new PdfDocumentComparatorResult(referenceName, documentName, errorMessage);
+        }
+
+        List<ImageComparatorResult> imageDifferResultList = new ArrayList<ImageComparatorResult>();
+
+        for (int i = 0; i < fields[4].length(); i++) {
+            imageDifferResultList.add(new ImageComparatorResult(fields[4].charAt(i) == '1', null));
+        }
+
+        if (!fields[6].isEmpty()) {
+            String[] alignment = fields[6].split(";", -1);
+            PdfPageAlignment pageAlignment = new PdfPageAlignment(
+                    PdfDocumentComparatorManifest.split(alignment[0]),
+                    PdfDocumentComparatorManifest.split(alignment[1]),
+                    PdfDocumentComparatorManifest.split(alignment[2]),
+                    PdfDocumentComparatorManifest.split(alignment[3]));
+            return new PdfDocumentComparatorResult(referenceName, referenceNrOfPages, documentName, documentNrOfPages, imageDifferResultList, pageAlignment);
+        } else {
+            return new PdfDocumentComparatorResult(referenceName, referenceNrOfPages, documentName, documentNrOfPages, imageDifferResultList);
+        }
+    }
+}
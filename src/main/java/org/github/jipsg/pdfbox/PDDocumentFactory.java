@@ -16,6 +16,8 @@
  */
 package org.github.jipsg.pdfbox;
 
+import org.apache.pdfbox.io.RandomAccess;
+import org.apache.pdfbox.io.RandomAccessFile;
 import org.apache.pdfbox.pdmodel.PDDocument;
 
 import javax.activation.DataSource;
@@ -28,6 +30,29 @@ import java.io.InputStream;
  * Helper class to create PDFBox documents.
  */
 public class PDDocumentFactory {
+
+    /**
+     * Optional directory for scratch files keeping the content of the PDF streams off the heap
+     */
+    private final File scratchDirectory;
+
+    public PDDocumentFactory() {
+        this.scratchDirectory = null;
+    }
+
+    /**
+     * Create documents whose stream content is kept in a temporary scratch file
+     * instead of the heap, i.e. the heap usage becomes roughly independent of
+     * the size of the PDF document. The scratch file is deleted when the
+     * document is closed.
+     *
+     * @param scratchDirectory the directory for the scratch files
+     */
+    public PDDocumentFactory(File scratchDirectory) {
+        assert scratchDirectory != null : "No scratchDirectory provided";
+        this.scratchDirectory = scratchDirectory;
+    }
+
     /**
      * Create a PDFBox document.
      *
@@ -40,25 +65,32 @@ public class PDDocumentFactory {
         PDDocument result;
         InputStream is = null;
         String sourceName = "unknown";
+        RandomAccess scratchFile = null;
 
         try {
+            if (scratchDirectory != null) {
+                scratchFile = new ScratchFile(File.createTempFile("pdfbox-", ".tmp", scratchDirectory));
+            }
+
             if (source instanceof File) {
                 File sourceFile = (File) source;
                 sourceName = sourceFile.getName();
-                result = PDDocument.load(sourceFile);
+                result = load(sourceFile, scratchFile);
             } else if (source instanceof InputStream) {
                 is = (InputStream) source;
-                result = PDDocument.load(is, true);
+                result = load(is, scratchFile);
             } else if (source instanceof DataSource) {
+                // data sources are parsed leniently - also when reading a file
+                sourceName = ((DataSource) source).getName();
                 is = ((DataSource) source).getInputStream();
-                result = PDDocument.load(is, true);
+                result = load(is, scratchFile);
             } else if (source instanceof byte[]) {
                 is = new ByteArrayInputStream((byte[]) source);
-                result = PDDocument.load(is, true);
+                result = load(is, scratchFile);
             } else if (source instanceof String) {
                 File sourceFile = new File((String) source);
                 sourceName = sourceFile.getName();
-                result = PDDocument.load(sourceFile.getAbsoluteFile());
+                result = load(sourceFile.getAbsoluteFile(), scratchFile);
             } else {
                 throw new IllegalAccessException("Don't know how to handle : " + source.getClass().getName());
             }
@@ -69,6 +101,9 @@ public class PDDocumentFactory {
 
             return result;
         } catch (Exception e) {
+            if (scratchFile != null) {
+                scratchFile.close();
+            }
             String msg = "Parsing the PDF document failed : name=" + sourceName + ", type=" + source.getClass().getName();
             throw new IOException(msg, e);
         } finally {
@@ -77,4 +112,36 @@ public class PDDocumentFactory {
             }
         }
     }
+
+    private static PDDocument load(File file, RandomAccess scratchFile) throws IOException {
+        return (scratchFile != null ? PDDocument.load(file, scratchFile) : PDDocument.load(file));
+    }
+
+    private static PDDocument load(InputStream is, RandomAccess scratchFile) throws IOException {
+        return (scratchFile != null ? PDDocument.load(is, scratchFile, true) : PDDocument.load(is, true));
+    }
+
+    /**
+     * Scratch file which is deleted when it is closed by the PDFBox document.
+     */
+    private static class ScratchFile extends RandomAccessFile {
+
+        private final File file;
+
+        ScratchFile(File file) throws IOException {
+            super(file, "rw");
+            this.file = file;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (!file.delete()) {
+                    file.deleteOnExit();
+                }
+            }
+        }
+    }
 }
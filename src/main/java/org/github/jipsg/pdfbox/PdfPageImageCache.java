@@ -0,0 +1,217 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.pdfbox;
+
+import org.apache.pdfbox.pdmodel.PDPage;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of rendered pages, e.g. to avoid rendering the same reference
+ * document over and over again when comparing it with many documents. The
+ * cache is bounded by the number of bytes of the cached rasters. The cached
+ * images are shared and must not be modified.
+ */
+public class PdfPageImageCache {
+
+    /**
+     * The maximum number of bytes of all cached rasters
+     */
+    private final long maxNrOfBytes;
+
+    /**
+     * The cached images in access order
+     */
+    private final LinkedHashMap<Key, BufferedImage> imageMap;
+
+    private long nrOfBytes;
+    private long nrOfHits;
+    private long nrOfMisses;
+
+    public PdfPageImageCache(long maxNrOfBytes) {
+        assert maxNrOfBytes > 0 : "invalid maximum number of bytes : " + maxNrOfBytes;
+        this.maxNrOfBytes = maxNrOfBytes;
+        this.imageMap = new LinkedHashMap<Key, BufferedImage>(16, 0.75f, true);
+    }
+
+    /**
+     * Get the image of a page from the cache or render and cache it.
+     *
+     * @param documentId the unique identity of the document
+     * @param pageIndex  the zero-based index of the page
+     * @param page       the page to be rendered on a cache miss
+     * @param resolution the resolution of the extracted image
+     * @param color      the color model, e.g. "rgb", "gray"
+     * @return the image of the page
+     * @throws Exception the conversion failed
+     */
+    public BufferedImage toImage(String documentId, int pageIndex, PDPage page, int resolution, String color) throws Exception {
+        return toImage(documentId, pageIndex, page, resolution, color, new PdfToImageConverter());
+    }
+
+    /**
+     * Get the image of a page from the cache or render and cache it using the
+     * given converter.
+     *
+     * @param documentId          the unique identity of the document
+     * @param pageIndex           the zero-based index of the page
+     * @param page                the page to be rendered on a cache miss
+     * @param resolution          the resolution of the extracted image
+     * @param color               the color model, e.g. "rgb", "gray"
+     * @param pdfToImageConverter the converter rendering the page
+     * @return the image of the page
+     * @throws Exception the conversion failed
+     */
+    public BufferedImage toImage(String documentId, int pageIndex, PDPage page, int resolution, String color, PdfToImageConverter pdfToImageConverter) throws Exception {
+        Key key = new Key(documentId, pageIndex, resolution, color);
+        BufferedImage result = get(key);
+
+        if (result == null) {
+            result = pdfToImageConverter.toImage(page, resolution, color);
+            put(key, result);
+        }
+
+        return result;
+    }
+
+    public synchronized BufferedImage get(Key key) {
+        BufferedImage result = imageMap.get(key);
+
+        if (result != null) {
+            nrOfHits++;
+        } else {
+            nrOfMisses++;
+        }
+
+        return result;
+    }
+
+    public synchronized void put(Key key, BufferedImage bufferedImage) {
+        long size = getNrOfBytes(bufferedImage);
+
+        if (size > maxNrOfBytes) {
+            return;
+        }
+
+        BufferedImage previousImage = imageMap.put(key, bufferedImage);
+        nrOfBytes += size - (previousImage != null ? getNrOfBytes(previousImage) : 0);
+
+        Iterator<Map.Entry<Key, BufferedImage>> iterator = imageMap.entrySet().iterator();
+        while (nrOfBytes > maxNrOfBytes && iterator.hasNext()) {
+            Map.Entry<Key, BufferedImage> entry = iterator.next();
+            nrOfBytes -= getNrOfBytes(entry.getValue());
+            iterator.remove();
+        }
+    }
+
+    public synchronized void clear() {
+        imageMap.clear();
+        nrOfBytes = 0;
+    }
+
+    public synchronized int size() {
+        return imageMap.size();
+    }
+
+    public synchronized long getNrOfBytes() {
+        return nrOfBytes;
+    }
+
+    public long getMaxNrOfBytes() {
+        return maxNrOfBytes;
+    }
+
+    public synchronized long getNrOfHits() {
+        return nrOfHits;
+    }
+
+    public synchronized long getNrOfMisses() {
+        return nrOfMisses;
+    }
+
+    /**
+     * Get the number of bytes used by the raster of an image.
+     */
+    public static long getNrOfBytes(BufferedImage bufferedImage) {
+        DataBuffer dataBuffer = bufferedImage.getRaster().getDataBuffer();
+        return (long) dataBuffer.getSize() * dataBuffer.getNumBanks() * DataBuffer.getDataTypeSize(dataBuffer.getDataType()) / 8;
+    }
+
+    @Override
+    public synchronized String toString() {
+        final StringBuilder sb = new StringBuilder("PdfPageImageCache{");
+        sb.append("size=").append(imageMap.size());
+        sb.append(", nrOfBytes=").append(nrOfBytes);
+        sb.append(", maxNrOfBytes=").append(maxNrOfBytes);
+        sb.append(", nrOfHits=").append(nrOfHits);
+        sb.append(", nrOfMisses=").append(nrOfMisses);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    /**
+     * Identifies a rendered page.
+     */
+    public static class Key {
+
+        private final String documentId;
+        private final int pageIndex;
+        private final int resolution;
+        private final String color;
+
+        public Key(String documentId, int pageIndex, int resolution, String color) {
+            assert documentId != null : "No documentId provided";
+            this.documentId = documentId;
+            this.pageIndex = pageIndex;
+            this.resolution = resolution;
+            this.color = (color != null ? color.toLowerCase() : "rgb");
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return pageIndex == key.pageIndex
+                    && resolution == key.resolution
+                    && documentId.equals(key.documentId)
+                    && color.equals(key.color);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = documentId.hashCode();
+            result = 31 * result + pageIndex;
+            result = 31 * result + resolution;
+            result = 31 * result + color.hashCode();
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return documentId + "#" + pageIndex + "@" + resolution + ":" + color;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.pdfbox;
+
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.github.jipsg.common.image.BufferedImagePool;
+import org.github.jipsg.common.metrics.Metrics;
+import org.github.jipsg.common.metrics.NoopMetrics;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Renders the pages of a PDF document in a background thread and passes
+ * the images through a bounded queue to a consumer.
+ */
+public class PdfPageImageProducer implements Runnable {
+
+    /**
+     * Marker put into the queue after the last page or when rendering failed
+     */
+    private static final BufferedImage END_OF_PAGES = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+
+    private final List<PDPage> pageList;
+    private final int nrOfPages;
+    private final int resolution;
+    private final String color;
+    private final BlockingQueue<BufferedImage> queue;
+
+    /**
+     * Optional cache of rendered pages
+     */
+    private PdfPageImageCache pageImageCache;
+
+    /**
+     * The identity of the document used for caching
+     */
+    private String documentId;
+
+    /**
+     * Optional pool to borrow the images of pages not being cached
+     */
+    private BufferedImagePool bufferedImagePool;
+
+    /**
+     * Optional cache of fonts and images shared across documents
+     */
+    private PdfResourceCache resourceCache;
+
+    /**
+     * Records the rendered pages
+     */
+    private Metrics metrics = NoopMetrics.INSTANCE;
+
+    /**
+     * The exception or error if rendering failed
+     */
+    private volatile Throwable exception;
+
+    /**
+     * Constructor.
+     *
+     * @param pageList   the pages to render
+     * @param nrOfPages  the number of pages to render
+     * @param resolution the resolution of the rendered images
+     * @param color      the color model, e.g. "rgb", "gray"
+     * @param queueSize  the number of rendered images waiting to be consumed
+     */
+    public PdfPageImageProducer(List<PDPage> pageList, int nrOfPages, int resolution, String color, int queueSize) {
+        assert pageList != null : "No pageList provided";
+        assert nrOfPages <= pageList.size() : "invalid number of pages : " + nrOfPages;
+        assert queueSize > 0 : "invalid queue size : " + queueSize;
+
+        this.pageList = pageList;
+        this.nrOfPages = nrOfPages;
+        this.resolution = resolution;
+        this.color = color;
+        this.queue = new ArrayBlockingQueue<BufferedImage>(queueSize);
+    }
+
+    /**
+     * Use a cache for the rendered pages of the document.
+     *
+     * @param pageImageCache the cache or null
+     * @param documentId     the identity of the document or null to skip caching
+     */
+    public void setPageImageCache(PdfPageImageCache pageImageCache, String documentId) {
+        this.pageImageCache = pageImageCache;
+        this.documentId = documentId;
+    }
+
+    /**
+     * Render the pages into pooled images - the consumer should release the
+     * images not being cached after using them.
+     *
+     * @param bufferedImagePool the pool or null
+     */
+    public void setBufferedImagePool(BufferedImagePool bufferedImagePool) {
+        this.bufferedImagePool = bufferedImagePool;
+    }
+
+    /**
+     * Share parsed fonts and decoded images with other documents.
+     *
+     * @param resourceCache the cache or null
+     */
+    public void setResourceCache(PdfResourceCache resourceCache) {
+        this.resourceCache = resourceCache;
+    }
+
+    /**
+     * Record the timer "render" and the counter "renderedBytes" of the rendered
+     * pages - pages taken from the page image cache are not rendered.
+     *
+     * @param metrics the metrics
+     */
+    public void setMetrics(Metrics metrics) {
+        assert metrics != null : "No metrics provided";
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void run() {
+        PdfToImageConverter pdfToImageConverter = new PdfToImageConverter(resourceCache, metrics);
+
+        try {
+            try {
+                for (int i = 0; i < nrOfPages; i++) {
+                    if (pageImageCache != null && documentId != null) {
+                        queue.put(pageImageCache.toImage(documentId, i, pageList.get(i), resolution, color, pdfToImageConverter));
+                    } else {
+                        queue.put(pdfToImageConverter.toImage(pageList.get(i), resolution, color, bufferedImagePool));
+                    }
+                }
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Throwable e) {
+                // also an error, e.g. running out of memory, must wake up the consumer
+                exception = e;
+            }
+            queue.put(END_OF_PAGES);
+        } catch (InterruptedException e) {
+            // the consumer is no longer interested in the pages
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Get the next rendered page and block until it is available.
+     *
+     * @return the image of the next page
+     * @throws Exception rendering the page failed or there are no pages left
+     * @throws Error      rendering the page failed with an error
+     */
+    public BufferedImage take() throws Exception {
+        BufferedImage result = queue.take();
+
+        if (result == END_OF_PAGES) {
+            // keep the marker for subsequent calls
+            queue.put(END_OF_PAGES);
+            if (exception instanceof Error) {
+                throw (Error) exception;
+            } else if (exception instanceof Exception) {
+                throw (Exception) exception;
+            } else if (exception != null) {
+                throw new Exception(exception);
+            } else {
+                throw new IllegalStateException("No more pages available");
+            }
+        }
+
+        return result;
+    }
+}
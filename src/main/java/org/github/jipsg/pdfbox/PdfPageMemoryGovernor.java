@@ -0,0 +1,88 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.pdfbox;
+
+/**
+ * Limits the estimated number of bytes of the pages being rendered and
+ * compared concurrently, e.g. to run many comparisons on a fixed heap
+ * without running out of memory due to a few oversized pages. Work is
+ * only admitted while the estimated in-flight bytes stay within the
+ * budget - otherwise the caller blocks until enough bytes are released.
+ * A request exceeding the whole budget is admitted when nothing else
+ * is in flight.
+ */
+public class PdfPageMemoryGovernor {
+
+    /**
+     * The maximum number of bytes in flight
+     */
+    private final long maxNrOfBytes;
+
+    /**
+     * The number of bytes currently in flight
+     */
+    private long nrOfBytes;
+
+    public PdfPageMemoryGovernor(long maxNrOfBytes) {
+        assert maxNrOfBytes > 0 : "invalid maximum number of bytes : " + maxNrOfBytes;
+        this.maxNrOfBytes = maxNrOfBytes;
+    }
+
+    /**
+     * Wait until the bytes fit into the budget.
+     *
+     * @param nrOfBytes the estimated number of bytes
+     * @throws InterruptedException waiting was interrupted
+     */
+    public synchronized void acquire(long nrOfBytes) throws InterruptedException {
+        assert nrOfBytes >= 0 : "invalid number of bytes : " + nrOfBytes;
+
+        while (this.nrOfBytes > 0 && this.nrOfBytes + nrOfBytes > maxNrOfBytes) {
+            wait();
+        }
+
+        this.nrOfBytes += nrOfBytes;
+    }
+
+    /**
+     * Release the bytes of a previous "acquire".
+     *
+     * @param nrOfBytes the number of acquired bytes
+     */
+    public synchronized void release(long nrOfBytes) {
+        assert nrOfBytes >= 0 && nrOfBytes <= this.nrOfBytes : "invalid number of bytes : " + nrOfBytes;
+        this.nrOfBytes -= nrOfBytes;
+        notifyAll();
+    }
+
+    public long getMaxNrOfBytes() {
+        return maxNrOfBytes;
+    }
+
+    public synchronized long getNrOfBytes() {
+        return nrOfBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        final StringBuilder sb = new StringBuilder("PdfPageMemoryGovernor{");
+        sb.append("nrOfBytes=").append(nrOfBytes);
+        sb.append(", maxNrOfBytes=").append(maxNrOfBytes);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,483 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.pdfbox;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDFontDescriptorDictionary;
+import org.apache.pdfbox.pdmodel.font.PDTrueTypeFont;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.graphics.xobject.PDXObject;
+import org.apache.pdfbox.pdmodel.graphics.xobject.PDXObjectImage;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * LRU cache of parsed fonts and decoded images shared across documents, e.g.
+ * when comparing a batch of documents created from the same template. Fonts and
+ * images are identified by a digest of their PDF objects including the raw
+ * stream content so a cached entry is only used for identical resources.
+ * The digests are calculated once per PDF object and kept as long as the
+ * document is in use, i.e. the documents must not be modified while rendering.
+ * <p/>
+ * PDFBox drops the resources of a page after rendering it, therefore the cache
+ * must be applied to a page before each rendering. Only the embedded TrueType
+ * and Type1 fonts and the images of the page resources are cached - resources
+ * of form XObjects and annotations are rendered as usual.
+ */
+public class PdfResourceCache {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+    /**
+     * The maximum number of cached fonts
+     */
+    private final int maxNrOfFonts;
+
+    /**
+     * The maximum number of bytes of all cached image rasters
+     */
+    private final long maxNrOfImageBytes;
+
+    /**
+     * The parsed fonts in access order
+     */
+    private final LinkedHashMap<String, CachedFont> fontMap;
+
+    /**
+     * The decoded images in access order
+     */
+    private final LinkedHashMap<String, BufferedImage> imageMap;
+
+    /**
+     * The digests of the PDF objects of the documents being rendered - the
+     * COS objects don't override "equals" and are dropped with their document
+     */
+    private final Map<COSBase, String> digestMap;
+
+    private long nrOfImageBytes;
+    private long nrOfFontHits;
+    private long nrOfFontMisses;
+    private long nrOfImageHits;
+    private long nrOfImageMisses;
+
+    public PdfResourceCache(int maxNrOfFonts, long maxNrOfImageBytes) {
+        assert maxNrOfFonts >= 0 : "invalid maximum number of fonts : " + maxNrOfFonts;
+        assert maxNrOfImageBytes >= 0 : "invalid maximum number of image bytes : " + maxNrOfImageBytes;
+        this.maxNrOfFonts = maxNrOfFonts;
+        this.maxNrOfImageBytes = maxNrOfImageBytes;
+        this.fontMap = new LinkedHashMap<String, CachedFont>(16, 0.75f, true);
+        this.imageMap = new LinkedHashMap<String, BufferedImage>(16, 0.75f, true);
+        this.digestMap = Collections.synchronizedMap(new WeakHashMap<COSBase, String>());
+    }
+
+    /**
+     * Replace the fonts and images of the page resources with instances using
+     * this cache - to be invoked right before rendering the page.
+     *
+     * @param page the page to be rendered
+     * @throws IOException reading the resources failed
+     */
+    public void apply(PDPage page) throws IOException {
+        PDResources resources = page.findResources();
+
+        if (resources == null) {
+            return;
+        }
+
+        if (maxNrOfFonts > 0) {
+            applyFonts(resources.getFonts());
+        }
+
+        if (maxNrOfImageBytes > 0) {
+            applyImages(resources.getXObjects());
+        }
+    }
+
+    public synchronized int getNrOfFonts() {
+        return fontMap.size();
+    }
+
+    public synchronized int getNrOfImages() {
+        return imageMap.size();
+    }
+
+    public synchronized long getNrOfImageBytes() {
+        return nrOfImageBytes;
+    }
+
+    public synchronized long getNrOfFontHits() {
+        return nrOfFontHits;
+    }
+
+    public synchronized long getNrOfFontMisses() {
+        return nrOfFontMisses;
+    }
+
+    public synchronized long getNrOfImageHits() {
+        return nrOfImageHits;
+    }
+
+    public synchronized long getNrOfImageMisses() {
+        return nrOfImageMisses;
+    }
+
+    public synchronized void clear() {
+        fontMap.clear();
+        imageMap.clear();
+        nrOfImageBytes = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        final StringBuilder sb = new StringBuilder("PdfResourceCache{");
+        sb.append("nrOfFonts=").append(fontMap.size());
+        sb.append(", nrOfImages=").append(imageMap.size());
+        sb.append(", nrOfImageBytes=").append(nrOfImageBytes);
+        sb.append(", nrOfFontHits=").append(nrOfFontHits);
+        sb.append(", nrOfFontMisses=").append(nrOfFontMisses);
+        sb.append(", nrOfImageHits=").append(nrOfImageHits);
+        sb.append(", nrOfImageMisses=").append(nrOfImageMisses);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    private void applyFonts(Map<String, PDFont> fonts) throws IOException {
+        for (Map.Entry<String, PDFont> entry : fonts.entrySet()) {
+            PDFont font = entry.getValue();
+            if (font != null && font.getFontDescriptor() instanceof PDFontDescriptorDictionary) {
+                PDFontDescriptorDictionary fontDescriptor = (PDFontDescriptorDictionary) font.getFontDescriptor();
+                // subclasses of the fonts might depend on other state than the embedded font
+                if (font.getClass() == PDTrueTypeFont.class && fontDescriptor.getFontFile2() != null) {
+                    entry.setValue(new CachedTrueTypeFont(this, (COSDictionary) font.getCOSObject(), getFontKey(font, fontDescriptor)));
+                } else if (font.getClass() == PDType1Font.class && fontDescriptor.getFontFile() != null && fontDescriptor.getFontFile3() == null) {
+                    entry.setValue(new CachedType1Font(this, (COSDictionary) font.getCOSObject(), getFontKey(font, fontDescriptor)));
+                }
+            }
+        }
+    }
+
+    private void applyImages(Map<String, PDXObject> xobjects) throws IOException {
+        for (Map.Entry<String, PDXObject> entry : xobjects.entrySet()) {
+            // stencil masks are painted in the current fill color
+            if (entry.getValue() instanceof PDXObjectImage && !((PDXObjectImage) entry.getValue()).getImageMask()) {
+                PDXObjectImage image = (PDXObjectImage) entry.getValue();
+                entry.setValue(new CachedXObjectImage(this, image, getDigest(image.getCOSStream())));
+            }
+        }
+    }
+
+    private String getFontKey(PDFont font, PDFontDescriptorDictionary fontDescriptor) throws IOException {
+        return font.getClass().getName() + "|" + font.getBaseFont() + "|" + getDigest(fontDescriptor.getCOSDictionary());
+    }
+
+    /**
+     * The page resources are re-created for each rendering but refer to the
+     * same PDF objects so the digest is only calculated for the first rendering.
+     */
+    private String getDigest(COSBase cosBase) throws IOException {
+        String result = digestMap.get(cosBase);
+
+        if (result == null) {
+            result = digest(cosBase);
+            digestMap.put(cosBase, result);
+        }
+
+        return result;
+    }
+
+    synchronized CachedFont getFont(String key) {
+        CachedFont result = fontMap.get(key);
+
+        if (result != null) {
+            nrOfFontHits++;
+        } else {
+            nrOfFontMisses++;
+        }
+
+        return result;
+    }
+
+    synchronized void putFont(String key, CachedFont cachedFont) {
+        fontMap.put(key, cachedFont);
+
+        Iterator<String> iterator = fontMap.keySet().iterator();
+        while (fontMap.size() > maxNrOfFonts && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    synchronized BufferedImage getImage(String key) {
+        BufferedImage result = imageMap.get(key);
+
+        if (result != null) {
+            nrOfImageHits++;
+        } else {
+            nrOfImageMisses++;
+        }
+
+        return result;
+    }
+
+    synchronized void putImage(String key, BufferedImage bufferedImage) {
+        long size = PdfPageImageCache.getNrOfBytes(bufferedImage);
+
+        if (size > maxNrOfImageBytes) {
+            return;
+        }
+
+        BufferedImage previousImage = imageMap.put(key, bufferedImage);
+        nrOfImageBytes += size - (previousImage != null ? PdfPageImageCache.getNrOfBytes(previousImage) : 0);
+
+        Iterator<Map.Entry<String, BufferedImage>> iterator = imageMap.entrySet().iterator();
+        while (nrOfImageBytes > maxNrOfImageBytes && iterator.hasNext()) {
+            Map.Entry<String, BufferedImage> entry = iterator.next();
+            nrOfImageBytes -= PdfPageImageCache.getNrOfBytes(entry.getValue());
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Calculate the digest of a PDF object including all referenced objects
+     * and the raw content of the streams.
+     *
+     * @param cosBase the PDF object
+     * @return the digest as hex string
+     * @throws IOException reading a stream failed
+     */
+    static String digest(COSBase cosBase) throws IOException {
+        MessageDigest messageDigest = createMessageDigest();
+        update(messageDigest, cosBase, new IdentityHashMap<COSBase, Integer>());
+        return new BigInteger(1, messageDigest.digest()).toString(16);
+    }
+
+    private static void update(MessageDigest messageDigest, COSBase cosBase, IdentityHashMap<COSBase, Integer> visitedMap) throws IOException {
+        COSBase currCosBase = (cosBase instanceof COSObject ? ((COSObject) cosBase).getObject() : cosBase);
+
+        if (currCosBase == null) {
+            update(messageDigest, "null");
+            return;
+        }
+
+        Integer visitedIndex = visitedMap.get(currCosBase);
+        if (visitedIndex != null) {
+            // cyclic or shared reference
+            update(messageDigest, "@" + visitedIndex);
+            return;
+        }
+
+        if (currCosBase instanceof COSDictionary) {
+            visitedMap.put(currCosBase, visitedMap.size());
+            COSDictionary dictionary = (COSDictionary) currCosBase;
+            List<COSName> keyList = new ArrayList<COSName>(dictionary.keySet());
+            Collections.sort(keyList);
+            update(messageDigest, "<<");
+            for (COSName key : keyList) {
+                update(messageDigest, "/" + key.getName());
+                update(messageDigest, dictionary.getItem(key), visitedMap);
+            }
+            update(messageDigest, ">>");
+            if (currCosBase instanceof COSStream) {
+                update(messageDigest, ((COSStream) currCosBase).getFilteredStream());
+            }
+        } else if (currCosBase instanceof COSArray) {
+            visitedMap.put(currCosBase, visitedMap.size());
+            COSArray array = (COSArray) currCosBase;
+            update(messageDigest, "[");
+            for (int i = 0; i < array.size(); i++) {
+                update(messageDigest, array.get(i), visitedMap);
+            }
+            update(messageDigest, "]");
+        } else if (currCosBase instanceof COSName) {
+            update(messageDigest, "/" + ((COSName) currCosBase).getName());
+        } else if (currCosBase instanceof COSString) {
+            update(messageDigest, "(");
+            messageDigest.update(((COSString) currCosBase).getBytes());
+            update(messageDigest, ")");
+        } else {
+            update(messageDigest, currCosBase.toString());
+        }
+    }
+
+    private static void update(MessageDigest messageDigest, String str) {
+        messageDigest.update(str.getBytes(US_ASCII));
+        messageDigest.update((byte) 0);
+    }
+
+    private static void update(MessageDigest messageDigest, InputStream is) throws IOException {
+        if (is == null) {
+            return;
+        }
+
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int nrOfBytes;
+            while ((nrOfBytes = is.read(buffer)) != -1) {
+                messageDigest.update(buffer, 0, nrOfBytes);
+            }
+        } finally {
+            is.close();
+        }
+    }
+
+    private static MessageDigest createMessageDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("The following digest algorithm is not supported : SHA-256", e);
+        }
+    }
+
+    /**
+     * A parsed font - the substitution flag is replayed since it affects the glyph mapping.
+     */
+    static class CachedFont {
+
+        private final Font awtFont;
+        private final boolean isFontSubstituted;
+
+        CachedFont(Font awtFont, boolean isFontSubstituted) {
+            this.awtFont = awtFont;
+            this.isFontSubstituted = isFontSubstituted;
+        }
+    }
+
+    /**
+     * TrueType font of the current document sharing the parsed AWT font.
+     */
+    private static class CachedTrueTypeFont extends PDTrueTypeFont {
+
+        private final PdfResourceCache resourceCache;
+        private final String key;
+        private Font awtFont;
+
+        CachedTrueTypeFont(PdfResourceCache resourceCache, COSDictionary fontDictionary, String key) throws IOException {
+            super(fontDictionary);
+            this.resourceCache = resourceCache;
+            this.key = key;
+        }
+
+        @Override
+        public Font getawtFont() throws IOException {
+            if (awtFont == null) {
+                CachedFont cachedFont = resourceCache.getFont(key);
+                if (cachedFont != null) {
+                    setIsFontSubstituted(cachedFont.isFontSubstituted);
+                    awtFont = cachedFont.awtFont;
+                } else {
+                    awtFont = super.getawtFont();
+                    resourceCache.putFont(key, new CachedFont(awtFont, isFontSubstituted()));
+                }
+            }
+            return awtFont;
+        }
+    }
+
+    /**
+     * Type1 font of the current document sharing the parsed AWT font.
+     */
+    private static class CachedType1Font extends PDType1Font {
+
+        private final PdfResourceCache resourceCache;
+        private final String key;
+        private Font awtFont;
+
+        CachedType1Font(PdfResourceCache resourceCache, COSDictionary fontDictionary, String key) {
+            super(fontDictionary);
+            this.resourceCache = resourceCache;
+            this.key = key;
+        }
+
+        @Override
+        public Font getawtFont() throws IOException {
+            if (awtFont == null) {
+                CachedFont cachedFont = resourceCache.getFont(key);
+                if (cachedFont != null) {
+                    setIsFontSubstituted(cachedFont.isFontSubstituted);
+                    awtFont = cachedFont.awtFont;
+                } else {
+                    awtFont = super.getawtFont();
+                    resourceCache.putFont(key, new CachedFont(awtFont, isFontSubstituted()));
+                }
+            }
+            return awtFont;
+        }
+    }
+
+    /**
+     * Image of the current document sharing the decoded image which must not be modified.
+     */
+    private static class CachedXObjectImage extends PDXObjectImage {
+
+        private final PdfResourceCache resourceCache;
+        private final PDXObjectImage image;
+        private final String key;
+
+        CachedXObjectImage(PdfResourceCache resourceCache, PDXObjectImage image, String key) {
+            super(image.getPDStream(), image.getSuffix());
+            this.resourceCache = resourceCache;
+            this.image = image;
+            this.key = key;
+        }
+
+        @Override
+        public BufferedImage getRGBImage() throws IOException {
+            BufferedImage result = resourceCache.getImage(key);
+
+            if (result == null) {
+                result = image.getRGBImage();
+                if (result != null) {
+                    resourceCache.putImage(key, result);
+                }
+            }
+
+            return result;
+        }
+
+        @Override
+        public void write2OutputStream(OutputStream out) throws IOException {
+            image.write2OutputStream(out);
+        }
+    }
+}
@@ -16,10 +16,15 @@
  */
 package org.github.jipsg.pdfbox;
 
+import org.apache.pdfbox.pdfviewer.PageDrawer;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.github.jipsg.common.image.BufferedImagePool;
+import org.github.jipsg.common.metrics.Metrics;
+import org.github.jipsg.common.metrics.NoopMetrics;
 
+import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.List;
@@ -30,6 +35,37 @@ import java.util.List;
 public class PdfToImageConverter {
     private final int DPI_72 = 72;
 
+    /**
+     * Optional cache of fonts and images shared across documents
+     */
+    private final PdfResourceCache resourceCache;
+
+    /**
+     * Records the timer "render" and the counter "renderedBytes" of each rendered page
+     */
+    private final Metrics metrics;
+
+    public PdfToImageConverter() {
+        this(null);
+    }
+
+    /**
+     * @param resourceCache optional cache of fonts and images shared across documents
+     */
+    public PdfToImageConverter(PdfResourceCache resourceCache) {
+        this(resourceCache, NoopMetrics.INSTANCE);
+    }
+
+    /**
+     * @param resourceCache optional cache of fonts and images shared across documents
+     * @param metrics       the metrics recording each rendered page
+     */
+    public PdfToImageConverter(PdfResourceCache resourceCache, Metrics metrics) {
+        assert metrics != null : "No metrics provided";
+        this.resourceCache = resourceCache;
+        this.metrics = metrics;
+    }
+
     /**
      * Generates preview images of the given PDF document.
      *
@@ -83,16 +119,150 @@ public class PdfToImageConverter {
         int pagesSize = pages.size();
 
         for (int i = startPage - 1; i < endPage && i < pagesSize; i++) {
-            PDPage page = pages.get(i);
-            PDRectangle cropBox = page.findCropBox();
-            int currResolution = calculateResolution(resolution, cropBox.getWidth(), cropBox.getHeight());
-            BufferedImage image = page.convertToImage(imageType, currResolution);
-            result.add(image);
+            result.add(toImage(pages.get(i), imageType, resolution));
+        }
+
+        return result;
+    }
+
+    /**
+     * Render a single page of a PDF document. This allows to process a document
+     * page by page without keeping all rendered pages in memory.
+     *
+     * @param page       the page to render
+     * @param resolution the resolution of the extracted image
+     * @param color      the color model, e.g. "rgb", "gray"
+     * @return the image of the page
+     * @throws Exception the conversion failed
+     */
+    public BufferedImage toImage(PDPage page, int resolution, String color) throws Exception {
+        return toImage(page, getImageType(color), resolution);
+    }
+
+    /**
+     * Render a single page of a PDF document into an image borrowed from the
+     * pool. The caller owns the image and should release it to the pool when
+     * it is no longer used.
+     *
+     * @param page              the page to render
+     * @param resolution        the resolution of the extracted image
+     * @param color             the color model, e.g. "rgb", "gray"
+     * @param bufferedImagePool the pool to borrow the image from or null
+     * @return the image of the page
+     * @throws Exception the conversion failed
+     */
+    public BufferedImage toImage(PDPage page, int resolution, String color, BufferedImagePool bufferedImagePool) throws Exception {
+        if (bufferedImagePool == null) {
+            return toImage(page, resolution, color);
+        }
+
+        long startTime = metrics.startTimer();
+        int imageType = getImageType(color);
+        PDRectangle cropBox = page.findCropBox();
+        int currResolution = calculateResolution(resolution, cropBox.getWidth(), cropBox.getHeight());
+        applyResourceCache(page);
+        return recordRender(startTime, convertToImage(page, imageType, currResolution, bufferedImagePool));
+    }
+
+    /**
+     * Same as "PDPage.convertToImage" but drawing into a pooled image.
+     */
+    private BufferedImage convertToImage(PDPage page, int imageType, int resolution, BufferedImagePool bufferedImagePool) throws Exception {
+        PDRectangle cropBox = page.findCropBox();
+        float scaling = resolution / (float) DPI_72;
+        int width = Math.round(cropBox.getWidth() * scaling);
+        int height = Math.round(cropBox.getHeight() * scaling);
+        int rotation = page.findRotation();
+
+        if (rotation < 0 || rotation >= 360) {
+            rotation = ((rotation % 360) + 360) % 360;
+        }
+
+        boolean isSwapped = (rotation == 90 || rotation == 270);
+        int imageWidth = (isSwapped ? height : width);
+        int imageHeight = (isSwapped ? width : height);
+        BufferedImage result = bufferedImagePool.borrow(imageWidth, imageHeight, imageType);
+        Graphics2D graphics = (Graphics2D) result.getGraphics();
+
+        try {
+            // clearing also overwrites the previous content of a borrowed image
+            graphics.setBackground(new Color(255, 255, 255, 0));
+            graphics.clearRect(0, 0, imageWidth, imageHeight);
+
+            if (rotation != 0) {
+                int translateX = (rotation == 90 || rotation == 180 ? imageWidth : 0);
+                int translateY = (rotation == 180 || rotation == 270 ? imageHeight : 0);
+                graphics.translate(translateX, translateY);
+                graphics.rotate((float) Math.toRadians(rotation));
+            }
+
+            graphics.scale(scaling, scaling);
+            PageDrawer drawer = new PageDrawer();
+            drawer.drawPage(graphics, page, new Dimension((int) cropBox.getWidth(), (int) cropBox.getHeight()));
+            drawer.dispose();
+        } catch (Exception e) {
+            bufferedImagePool.release(result);
+            throw e;
+        } finally {
+            graphics.dispose();
         }
 
         return result;
     }
 
+    private BufferedImage toImage(PDPage page, int imageType, int resolution) throws Exception {
+        PDRectangle cropBox = page.findCropBox();
+        long startTime = metrics.startTimer();
+        int currResolution = calculateResolution(resolution, cropBox.getWidth(), cropBox.getHeight());
+        applyResourceCache(page);
+        return recordRender(startTime, page.convertToImage(imageType, currResolution));
+    }
+
+    private BufferedImage recordRender(long startTime, BufferedImage bufferedImage) {
+        metrics.stopTimer("render", startTime);
+
+        if (metrics.isEnabled()) {
+            metrics.increment("renderedBytes", PdfPageImageCache.getNrOfBytes(bufferedImage));
+        }
+
+        return bufferedImage;
+    }
+
+    /**
+     * The page resources are dropped after rendering so the cache is applied every time.
+     */
+    private void applyResourceCache(PDPage page) throws Exception {
+        if (resourceCache != null) {
+            resourceCache.apply(page);
+        }
+    }
+
+    /**
+     * Estimate the number of bytes of the raster of a rendered page without
+     * rendering it, e.g. to limit the number of pages rendered concurrently.
+     *
+     * @param page       the page to render
+     * @param resolution the resolution of the extracted image
+     * @param color      the color model, e.g. "rgb", "gray"
+     * @return the estimated number of bytes
+     */
+    public long getNrOfBytes(PDPage page, int resolution, String color) {
+        PDRectangle cropBox = page.findCropBox();
+        int currResolution = calculateResolution(resolution, cropBox.getWidth(), cropBox.getHeight());
+        float scaling = currResolution / (float) DPI_72;
+        long width = Math.round(cropBox.getWidth() * scaling);
+        long height = Math.round(cropBox.getHeight() * scaling);
+        int imageType = getImageType(color);
+
+        if (imageType == BufferedImage.TYPE_BYTE_BINARY) {
+            return ((width + 7) / 8) * height;
+        } else if (imageType == BufferedImage.TYPE_BYTE_GRAY || imageType == BufferedImage.TYPE_BYTE_INDEXED) {
+            return width * height;
+        } else {
+            return 4 * width * height;
+        }
+    }
+
     private int getImageType(String color) {
         int result;
         String currColor = (color != null && color.length() > 0 ? color : "rgb");
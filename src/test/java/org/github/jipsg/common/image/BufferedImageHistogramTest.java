@@ -0,0 +1,70 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.image;
+
+import org.junit.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+import static org.junit.Assert.*;
+
+public class BufferedImageHistogramTest {
+
+    /**
+     * The histogram of a large image counted in parallel must match a plain per-pixel count.
+     */
+    @Test
+    public void testHistogramOfLargeImage() throws Exception {
+        final BufferedImage bufferedImage = BufferedImageFactory.create("./src/test/documents/png/open-office-02.pdf.300.0.png");
+        final BufferedImageHistogram bufferedImageHistogram = new BufferedImageHistogram(bufferedImage);
+        final int[] red = new int[256];
+        final int[] green = new int[256];
+        final int[] blue = new int[256];
+
+        for (int y = 0; y < bufferedImage.getHeight(); y++) {
+            for (int x = 0; x < bufferedImage.getWidth(); x++) {
+                Color color = new Color(bufferedImage.getRGB(x, y));
+                red[color.getRed()]++;
+                green[color.getGreen()]++;
+                blue[color.getBlue()]++;
+            }
+        }
+
+        assertEquals(bufferedImage.getWidth() * bufferedImage.getHeight(), bufferedImageHistogram.getNrOfPixels());
+        assertArrayEquals(red, bufferedImageHistogram.getRed());
+        assertArrayEquals(green, bufferedImageHistogram.getGreen());
+        assertArrayEquals(blue, bufferedImageHistogram.getBlue());
+        assertFalse(bufferedImageHistogram.isWhite(1));
+        assertFalse(bufferedImageHistogram.isBlack(1));
+    }
+
+    @Test
+    public void testHistogramOfWhiteImage() throws Exception {
+        final BufferedImage bufferedImage = new BufferedImage(100, 50, BufferedImage.TYPE_INT_RGB);
+        final Graphics graphics = bufferedImage.getGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, 100, 50);
+        graphics.dispose();
+
+        final BufferedImageHistogram bufferedImageHistogram = new BufferedImageHistogram(bufferedImage);
+        assertEquals(5000, bufferedImageHistogram.getNrOfPixels());
+        assertEquals(5000, bufferedImageHistogram.getRed()[255]);
+        assertTrue(bufferedImageHistogram.isWhite(1));
+        assertFalse(bufferedImageHistogram.isBlack(1));
+    }
+}
@@ -17,13 +17,25 @@
 package org.github.jipsg.common.image.diff;
 
 import org.github.jipsg.common.image.BufferedImageFactory;
+import org.github.jipsg.common.image.BufferedImageHash;
+import org.github.jipsg.common.image.BufferedImagePool;
 import org.github.jipsg.common.image.BufferedImageUtils;
+import org.github.jipsg.common.image.compare.ImageComparator;
+import org.github.jipsg.common.image.compare.ImageComparatorResult;
+import org.github.jipsg.common.image.compare.impl.BilevelImageComparator;
+import org.github.jipsg.common.image.compare.impl.PerceptualHashImageComparator;
+import org.github.jipsg.common.image.compare.impl.XorImageComparator;
+import org.github.jipsg.common.image.compare.impl.XorVerdictImageComparator;
 import org.github.jipsg.common.image.diff.impl.XorImageDiffer;
 import org.junit.Test;
 
+import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
 import java.io.File;
 
+import static org.junit.Assert.*;
+
 public class ImageComparatorTest {
 
     private File outDir = new File("./target/out/imagediff");
@@ -52,4 +64,215 @@ public class ImageComparatorTest {
         final BufferedImage bufferedImage = imageDiffer.diff(bufferedImage1, bufferedImage2);
         BufferedImageUtils.writeBufferedImage(bufferedImage, "png", new File(outDir, "testDifferentImage.png"));
     }
+
+    /**
+     * The fast path for "TYPE_INT_RGB" images must create the same diff image as the generic one.
+     */
+    @Test
+    public void testIntRgbImagesCreateSameDiffImage() throws Exception {
+        final BufferedImage bufferedImage1 = BufferedImageFactory.create("./src/test/documents/png/open-office-02.pdf.300.0.png");
+        final BufferedImage bufferedImage2 = BufferedImageFactory.create("./src/test/documents/png/open-office-02-similar.pdf.300.0.png");
+        assertNotEquals(BufferedImage.TYPE_INT_RGB, bufferedImage1.getType());
+        final BufferedImage expectedImage = imageDiffer.diff(bufferedImage1, bufferedImage2);
+        final BufferedImage bufferedImage = imageDiffer.diff(toIntRgbImage(bufferedImage1), toIntRgbImage(bufferedImage2));
+        assertSameImage(expectedImage, bufferedImage);
+    }
+
+    /**
+     * The verdict-only comparator must come to the same conclusion as the diff-based one.
+     */
+    @Test
+    public void testVerdictImageComparator() throws Exception {
+        final BufferedImage bufferedImage1 = BufferedImageFactory.create("./src/test/documents/png/open-office-01.pdf.300.0.png");
+        final BufferedImage bufferedImage2 = BufferedImageFactory.create("./src/test/documents/png/open-office-02.pdf.300.0.png");
+        final BufferedImage bufferedImage3 = BufferedImageFactory.create("./src/test/documents/png/open-office-02-similar.pdf.300.0.png");
+        final ImageComparator imageComparator = new XorVerdictImageComparator();
+
+        assertTrue(imageComparator.compare(bufferedImage1, bufferedImage1).isIdentical());
+        assertFalse(imageComparator.compare(bufferedImage1, bufferedImage2).isIdentical());
+        assertFalse(imageComparator.compare(bufferedImage2, bufferedImage3).isIdentical());
+        assertFalse(imageComparator.compare(toIntRgbImage(bufferedImage2), toIntRgbImage(bufferedImage3)).isIdentical());
+        assertTrue(imageComparator.compare(toIntRgbImage(bufferedImage3), toIntRgbImage(bufferedImage3)).isIdentical());
+        assertFalse(new XorImageComparator().compare(bufferedImage2, bufferedImage3).isIdentical());
+        assertNull(imageComparator.compare(bufferedImage1, bufferedImage2).getBufferedImage());
+    }
+
+    /**
+     * The cropped diff image must be identical to the corresponding region of the full diff image.
+     */
+    @Test
+    public void testCroppedDiffImage() throws Exception {
+        final BufferedImage bufferedImage1 = toIntRgbImage(BufferedImageFactory.create("./src/test/documents/png/open-office-02.pdf.300.0.png"));
+        final BufferedImage bufferedImage2 = toIntRgbImage(BufferedImageFactory.create("./src/test/documents/png/open-office-02-similar.pdf.300.0.png"));
+        final BufferedImage expectedImage = imageDiffer.diff(bufferedImage1, bufferedImage2);
+        final ImageComparatorResult imageComparatorResult = new XorImageComparator(true).compare(bufferedImage1, bufferedImage2);
+        final BufferedImage bufferedImage = imageComparatorResult.getBufferedImage();
+        final Point offset = imageComparatorResult.getOffset();
+        BufferedImageUtils.writeBufferedImage(bufferedImage, "png", new File(outDir, "testCroppedDiffImage.png"));
+
+        assertFalse(imageComparatorResult.isIdentical());
+        assertTrue(bufferedImage.getWidth() * bufferedImage.getHeight() < expectedImage.getWidth() * expectedImage.getHeight());
+
+        for (int y = 0; y < bufferedImage.getHeight(); y++) {
+            for (int x = 0; x < bufferedImage.getWidth(); x++) {
+                assertEquals(expectedImage.getRGB(offset.x + x, offset.y + y), bufferedImage.getRGB(x, y));
+            }
+        }
+
+        assertTrue(new XorImageComparator(true).compare(bufferedImage1, bufferedImage1).isIdentical());
+        assertFalse(new XorImageComparator(true).compare(bufferedImage1, bufferedImage1).hasBufferedImage());
+    }
+
+    /**
+     * Identical images have the same perceptual hash while different images are pre-screened.
+     */
+    @Test
+    public void testPerceptualHashImageComparator() throws Exception {
+        final BufferedImage bufferedImage1 = BufferedImageFactory.create("./src/test/documents/png/open-office-01.pdf.300.0.png");
+        final BufferedImage bufferedImage2 = BufferedImageFactory.create("./src/test/documents/png/open-office-02.pdf.300.0.png");
+        final ImageComparator imageComparator = new PerceptualHashImageComparator(new XorVerdictImageComparator(), 0);
+
+        final ImageComparatorResult identicalResult = imageComparator.compare(bufferedImage1, toIntRgbImage(bufferedImage1));
+        assertTrue(identicalResult.isIdentical());
+        assertTrue(identicalResult.hasPerceptualHashes());
+        assertEquals(identicalResult.getLhsPerceptualHash(), identicalResult.getRhsPerceptualHash());
+
+        final ImageComparatorResult differentResult = imageComparator.compare(bufferedImage1, bufferedImage2);
+        assertFalse(differentResult.isIdentical());
+        assertTrue(BufferedImageHash.distance(differentResult.getLhsPerceptualHash(), differentResult.getRhsPerceptualHash()) > 0);
+
+        final long hash = differentResult.getRhsPerceptualHash();
+        assertEquals(16, BufferedImageHash.toHexString(hash).length());
+        assertEquals(hash, BufferedImageHash.parseHexString(BufferedImageHash.toHexString(hash)));
+    }
+
+    /**
+     * The tile-parallel diff must create the same diff image and verdict as the sequential one.
+     */
+    @Test
+    public void testParallelDiffImage() throws Exception {
+        final BufferedImage bufferedImage1 = BufferedImageFactory.create("./src/test/documents/png/open-office-02.pdf.300.0.png");
+        final BufferedImage bufferedImage2 = BufferedImageFactory.create("./src/test/documents/png/open-office-02-similar.pdf.300.0.png");
+        final XorImageDiffer parallelImageDiffer = new XorImageDiffer(true);
+
+        assertSameImage(imageDiffer.diff(bufferedImage1, bufferedImage2), parallelImageDiffer.diff(bufferedImage1, bufferedImage2));
+        assertSameImage(imageDiffer.diff(toIntRgbImage(bufferedImage1), toIntRgbImage(bufferedImage2)), parallelImageDiffer.diff(toIntRgbImage(bufferedImage1), toIntRgbImage(bufferedImage2)));
+        assertFalse(parallelImageDiffer.isIdentical(bufferedImage1, bufferedImage2, 1));
+        assertTrue(parallelImageDiffer.isIdentical(bufferedImage1, toIntRgbImage(bufferedImage1), 1));
+        assertFalse(new XorImageComparator(false, true).compare(bufferedImage1, bufferedImage2).isIdentical());
+        assertTrue(new XorImageComparator(false, true).compare(bufferedImage2, bufferedImage2).isIdentical());
+    }
+
+    @Test
+    public void testPooledDiffImage() throws Exception {
+        final BufferedImage bufferedImage1 = toIntRgbImage(BufferedImageFactory.create("./src/test/documents/png/open-office-02.pdf.300.0.png"));
+        final BufferedImage bufferedImage2 = toIntRgbImage(BufferedImageFactory.create("./src/test/documents/png/open-office-02-similar.pdf.300.0.png"));
+        final BufferedImage smallerImage = toIntRgbImage(bufferedImage2.getSubimage(0, 0, bufferedImage2.getWidth() - 10, bufferedImage2.getHeight() - 10));
+        final BufferedImagePool pool = new BufferedImagePool(4);
+        final XorImageDiffer pooledImageDiffer = new XorImageDiffer(false, pool);
+
+        // pooled images have an undefined content which must not leak into the diff image
+        pool.release(createDirtyImage(bufferedImage1.getWidth(), bufferedImage1.getHeight()));
+        assertSameImage(imageDiffer.diff(bufferedImage1, bufferedImage2), pooledImageDiffer.diff(bufferedImage1, bufferedImage2));
+        pool.release(createDirtyImage(bufferedImage1.getWidth(), bufferedImage1.getHeight()));
+        assertSameImage(imageDiffer.diff(bufferedImage1, smallerImage), pooledImageDiffer.diff(bufferedImage1, smallerImage));
+        pool.release(createDirtyImage(bufferedImage1.getWidth(), bufferedImage1.getHeight()));
+        assertSameImage(imageDiffer.diff(bufferedImage1, bufferedImage1), pooledImageDiffer.diff(bufferedImage1, bufferedImage1));
+        assertEquals(3, pool.getNrOfHits());
+
+        // sub-images can't be borrowed as a new image
+        pool.release(bufferedImage1.getSubimage(0, 0, 10, 10));
+        assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void testBilevelImageComparator() throws Exception {
+        final BufferedImage bufferedImage1 = toBilevelImage(BufferedImageFactory.create("./src/test/documents/png/open-office-02.pdf.300.0.png"));
+        final BufferedImage bufferedImage2 = toBilevelImage(BufferedImageFactory.create("./src/test/documents/png/open-office-02-similar.pdf.300.0.png"));
+        final BilevelImageComparator imageComparator = new BilevelImageComparator();
+
+        final ImageComparatorResult identicalResult = imageComparator.compare(bufferedImage1, toBilevelImage(bufferedImage1));
+        assertTrue(identicalResult.isIdentical());
+        assertFalse(identicalResult.hasBufferedImage());
+        assertEquals(0, BilevelImageComparator.getNrOfDifferentPixels(bufferedImage1, bufferedImage1));
+
+        final ImageComparatorResult differentResult = imageComparator.compare(bufferedImage1, bufferedImage2);
+        assertFalse(differentResult.isIdentical());
+        BufferedImageUtils.writeBufferedImage(differentResult.getBufferedImage(), "png", new File(outDir, "testBilevelImageComparator.png"));
+
+        // the packed diff image marks the same pixels as a pixel by pixel comparison
+
+        long nrOfDifferentPixels = 0;
+        for (int y = 0; y < bufferedImage1.getHeight(); y++) {
+            for (int x = 0; x < bufferedImage1.getWidth(); x++) {
+                boolean isDifferent = bufferedImage1.getRGB(x, y) != bufferedImage2.getRGB(x, y);
+                assertEquals(isDifferent, differentResult.getBufferedImage().getRGB(x, y) != Color.WHITE.getRGB());
+                nrOfDifferentPixels += (isDifferent ? 1 : 0);
+            }
+        }
+        assertEquals(nrOfDifferentPixels, BilevelImageComparator.getNrOfDifferentPixels(bufferedImage1, bufferedImage2));
+
+        // a pixel in the last byte of a row which is not completely used
+
+        final BufferedImage bufferedImage3 = new BufferedImage(101, 3, BufferedImage.TYPE_BYTE_BINARY);
+        final BufferedImage bufferedImage4 = new BufferedImage(101, 3, BufferedImage.TYPE_BYTE_BINARY);
+        bufferedImage4.setRGB(100, 1, Color.WHITE.getRGB());
+        assertEquals(1, BilevelImageComparator.getNrOfDifferentPixels(bufferedImage3, bufferedImage4));
+        assertFalse(imageComparator.compare(bufferedImage3, bufferedImage4).isIdentical());
+
+        // rows consisting of full words where only the padding bits of the last word differ
+
+        final BufferedImage bufferedImage5 = new BufferedImage(60, 3, BufferedImage.TYPE_BYTE_BINARY);
+        final BufferedImage bufferedImage6 = new BufferedImage(60, 3, BufferedImage.TYPE_BYTE_BINARY);
+        ((DataBufferByte) bufferedImage6.getRaster().getDataBuffer()).getData()[7] = 0x0F;
+        assertEquals(0, BilevelImageComparator.getNrOfDifferentPixels(bufferedImage5, bufferedImage6));
+        assertTrue(imageComparator.compare(bufferedImage5, bufferedImage6).isIdentical());
+        bufferedImage6.setRGB(59, 0, Color.WHITE.getRGB());
+        assertEquals(1, BilevelImageComparator.getNrOfDifferentPixels(bufferedImage5, bufferedImage6));
+
+        // rows consisting of full words without padding
+
+        final BufferedImage bufferedImage7 = new BufferedImage(64, 3, BufferedImage.TYPE_BYTE_BINARY);
+        final BufferedImage bufferedImage8 = new BufferedImage(64, 3, BufferedImage.TYPE_BYTE_BINARY);
+        bufferedImage8.setRGB(63, 2, Color.WHITE.getRGB());
+        assertEquals(1, BilevelImageComparator.getNrOfDifferentPixels(bufferedImage7, bufferedImage8));
+        assertTrue(imageComparator.compare(bufferedImage7, bufferedImage8).getBufferedImage().getRGB(63, 2) != Color.WHITE.getRGB());
+    }
+
+    private static void assertSameImage(BufferedImage expectedImage, BufferedImage bufferedImage) {
+        assertEquals(expectedImage.getWidth(), bufferedImage.getWidth());
+        assertEquals(expectedImage.getHeight(), bufferedImage.getHeight());
+
+        for (int y = 0; y < expectedImage.getHeight(); y++) {
+            for (int x = 0; x < expectedImage.getWidth(); x++) {
+                assertEquals(expectedImage.getRGB(x, y), bufferedImage.getRGB(x, y));
+            }
+        }
+    }
+
+    private static BufferedImage createDirtyImage(int width, int height) {
+        final BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y += 7) {
+            for (int x = 0; x < width; x += 3) {
+                result.setRGB(x, y, 0x336699);
+            }
+        }
+        return result;
+    }
+
+    private static BufferedImage toIntRgbImage(BufferedImage bufferedImage) {
+        BufferedImage result = new BufferedImage(bufferedImage.getWidth(), bufferedImage.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics graphics = result.getGraphics();
+        graphics.drawImage(bufferedImage, 0, 0, null);
+        graphics.dispose();
+        return result;
+    }
+
+    private static BufferedImage toBilevelImage(BufferedImage bufferedImage) {
+        BufferedImage result = new BufferedImage(bufferedImage.getWidth(), bufferedImage.getHeight(), BufferedImage.TYPE_BYTE_BINARY);
+        Graphics graphics = result.getGraphics();
+        graphics.drawImage(bufferedImage, 0, 0, null);
+        graphics.dispose();
+        return result;
+    }
 }
@@ -16,11 +16,41 @@
  */
 package org.github.jipsg.pdf;
 
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.edit.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.graphics.xobject.PDPixelMap;
+import org.apache.pdfbox.pdmodel.graphics.xobject.PDXObjectImage;
+import org.github.jipsg.common.image.BufferedImagePool;
+import org.github.jipsg.common.image.compare.ImageComparatorResult;
+import org.github.jipsg.common.image.compare.impl.BilevelImageComparator;
+import org.github.jipsg.common.image.compare.impl.XorImageComparator;
+import org.github.jipsg.common.image.compare.impl.XorVerdictImageComparator;
+import org.github.jipsg.common.image.diff.impl.XorImageDiffer;
+import org.github.jipsg.common.metrics.JmxMetrics;
+import org.github.jipsg.common.metrics.Metrics;
+import org.github.jipsg.pdfbox.PDDocumentFactory;
+import org.github.jipsg.pdfbox.PdfPageImageCache;
+import org.github.jipsg.pdfbox.PdfPageImageProducer;
+import org.github.jipsg.pdfbox.PdfPageMemoryGovernor;
+import org.github.jipsg.pdfbox.PdfResourceCache;
+import org.github.jipsg.pdfbox.PdfToImageConverter;
 import org.junit.Test;
 
 import javax.activation.DataSource;
 import javax.activation.FileDataSource;
+import javax.management.ObjectName;
+import java.awt.*;
+import java.awt.image.BufferedImage;
 import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import static org.junit.Assert.*;
 
@@ -70,6 +100,77 @@ public class PdfDocumentComparatorTest {
         assertTrue(pdfDocumentComparatorResult.toString().length() > 16);
     }
 
+    /**
+     * We write a diff image cropped to the differences together with its offset.
+     */
+    @Test
+    public void testSimilarPdfDocumentsCroppedToDifferences() throws Exception {
+        DataSource referenceDataSource = new FileDataSource(new File(testDocumentDir, "open-office-02.pdf"));
+        DataSource documentDataSource = new FileDataSource(new File(testDocumentDir, "open-office-02-similar.pdf"));
+        PdfDocumentComparatorResult pdfDocumentComparatorResult = new PdfDocumentComparator().setImageComparator(new XorImageComparator(true)).compareDocuments(referenceDataSource, documentDataSource);
+        File resultDirectory = new File(testResultDir, "testSimilarPdfDocumentsCroppedToDifferences");
+        new PdfDocumentComparatorResultWriter().writeToDirectory(testResultDir, "testSimilarPdfDocumentsCroppedToDifferences", pdfDocumentComparatorResult);
+        Point offset = pdfDocumentComparatorResult.getImageDifferResultList().get(0).getOffset();
+        assertFalse(pdfDocumentComparatorResult.isIdentical());
+        assertFalse(offset.x == 0 && offset.y == 0);
+        assertTrue(new File(resultDirectory, "page-0@" + offset.x + "," + offset.y + ".png").length() > 0);
+    }
+
+    /**
+     * The results wrap the given list where results added to the list are counted as well.
+     */
+    @Test
+    public void testPdfDocumentComparatorResultsWrappingList() throws Exception {
+        List<ImageComparatorResult> identicalPageList = Collections.singletonList(new ImageComparatorResult(true, null));
+        List<ImageComparatorResult> differentPageList = Collections.singletonList(new ImageComparatorResult(false, null));
+        List<PdfDocumentComparatorResult> resultList = new ArrayList<PdfDocumentComparatorResult>();
+        PdfDocumentComparatorResults pdfDocumentComparatorResults = new PdfDocumentComparatorResults(resultList);
+
+        resultList.add(new PdfDocumentComparatorResult("a.pdf", 1, "a.pdf", 1, identicalPageList));
+        pdfDocumentComparatorResults.getPdfDocumentComparatorResultList().add(new PdfDocumentComparatorResult("b.pdf", 1, "b.pdf", 1, differentPageList));
+        pdfDocumentComparatorResults.add(new PdfDocumentComparatorResult("c.pdf", 1, "c.pdf", 1, identicalPageList));
+
+        assertEquals(3, resultList.size());
+        assertEquals(3, pdfDocumentComparatorResults.size());
+        assertEquals(2, pdfDocumentComparatorResults.getNrOfMatches());
+        assertEquals(1, pdfDocumentComparatorResults.getNrOfDiffs());
+
+        PdfDocumentComparatorResults countOnlyResults = new PdfDocumentComparatorResults(true);
+        for (PdfDocumentComparatorResult pdfDocumentComparatorResult : resultList) {
+            countOnlyResults.add(pdfDocumentComparatorResult);
+        }
+        assertEquals(3, countOnlyResults.size());
+        assertEquals(2, countOnlyResults.getNrOfMatches());
+        assertTrue(countOnlyResults.getPdfDocumentComparatorResultList().isEmpty());
+    }
+
+    /**
+     * We render pages in the background where an error while rendering is passed to the consumer.
+     */
+    @Test
+    public void testPdfPageImageProducerWithError() throws Exception {
+        List<PDPage> pageList = new ArrayList<PDPage>();
+        pageList.add(new PDPage() {
+            @Override
+            public PDRectangle findCropBox() {
+                throw new OutOfMemoryError("Rendering the page failed");
+            }
+        });
+
+        PdfPageImageProducer producer = new PdfPageImageProducer(pageList, 1, 72, "rgb", 1);
+        Thread thread = new Thread(producer);
+        thread.start();
+
+        try {
+            producer.take();
+            fail("The error was not passed to the consumer");
+        } catch (OutOfMemoryError e) {
+            assertEquals("Rendering the page failed", e.getMessage());
+        } finally {
+            thread.join();
+        }
+    }
+
     /**
      * We compare two different PDF documents both having one page.
      */
@@ -108,6 +209,553 @@ public class PdfDocumentComparatorTest {
         assertFalse(pdfDocumentComparatorResult.isIdentical());
     }
 
+    /**
+     * We compare a multi-page document with itself while rendering the pages in background threads.
+     */
+    @Test
+    public void testIdenticalPdfDocumentsPipelined() throws Exception {
+        DataSource referenceDataSource = new FileDataSource(new File(testDocumentDir, "multi-page-01.pdf"));
+        DataSource documentDataSource = new FileDataSource(new File(testDocumentDir, "multi-page-01.pdf"));
+        PdfDocumentComparatorResult pdfDocumentComparatorResult = new PdfDocumentComparator().setPipelined(true).compareDocuments(referenceDataSource, documentDataSource);
+        assertEquals(3, pdfDocumentComparatorResult.getReferenceNrOfPages());
+        assertEquals(3, pdfDocumentComparatorResult.getDocumentNrOfPages());
+        assertEquals(3, pdfDocumentComparatorResult.getImageDifferResultList().size());
+        assertTrue(pdfDocumentComparatorResult.isIdentical());
+    }
+
+    /**
+     * We compare a file with itself where the digest check skips the rendering.
+     */
+    @Test
+    public void testIdenticalPdfFilesWithDigestCheck() throws Exception {
+        File referenceFile = new File(testDocumentDir, "multi-page-01.pdf");
+        File documentFile = new File(testDocumentDir, "multi-page-01.pdf");
+        PdfDocumentComparatorResult pdfDocumentComparatorResult = new PdfDocumentComparator().setDigestCheck(true).compareFiles(referenceFile, documentFile);
+        assertEquals(3, pdfDocumentComparatorResult.getReferenceNrOfPages());
+        assertEquals(3, pdfDocumentComparatorResult.getDocumentNrOfPages());
+        assertEquals(3, pdfDocumentComparatorResult.getImageDifferResultList().size());
+        assertFalse(pdfDocumentComparatorResult.getImageDifferResultList().get(0).hasBufferedImage());
+        assertTrue(pdfDocumentComparatorResult.isIdentical());
+
+        File otherDocumentFile = new File(testDocumentDir, "open-office-01.pdf");
+        assertFalse(new PdfDocumentComparator().setDigestCheck(true).compareFiles(referenceFile, otherDocumentFile).isIdentical());
+    }
+
+    /**
+     * We compare a truncated PDF with an identical copy where the digest check parses the
+     * document as leniently as the regular comparison.
+     */
+    @Test
+    public void testTruncatedPdfFilesWithDigestCheck() throws Exception {
+        byte[] content = Files.readAllBytes(new File(testDocumentDir, "open-office-01.pdf").toPath());
+        File directory = new File(testResultDir, "testTruncatedPdfFilesWithDigestCheck");
+        File referenceFile = new File(directory, "reference.pdf");
+        File documentFile = new File(directory, "document.pdf");
+        directory.mkdirs();
+        Files.write(referenceFile.toPath(), Arrays.copyOf(content, content.length / 2));
+        Files.write(documentFile.toPath(), Arrays.copyOf(content, content.length / 2));
+
+        PdfDocumentComparatorResult expectedResult = new PdfDocumentComparator().compareFiles(referenceFile, documentFile);
+        PdfDocumentComparatorResult pdfDocumentComparatorResult = new PdfDocumentComparator().setDigestCheck(true).compareFiles(referenceFile, documentFile);
+        assertFalse(expectedResult.hasErrorMessage());
+        assertFalse(pdfDocumentComparatorResult.hasErrorMessage());
+        assertEquals(expectedResult.isIdentical(), pdfDocumentComparatorResult.isIdentical());
+        assertEquals(expectedResult.getReferenceNrOfPages(), pdfDocumentComparatorResult.getReferenceNrOfPages());
+    }
+
+    /**
+     * We compare the same reference document twice where the second comparison uses the cached pages.
+     */
+    @Test
+    public void testPdfDocumentsWithPageImageCache() throws Exception {
+        PdfPageImageCache pageImageCache = new PdfPageImageCache(64 * 1024 * 1024);
+        PdfDocumentComparator pdfDocumentComparator = new PdfDocumentComparator().setPageImageCache(pageImageCache);
+        DataSource referenceDataSource = new FileDataSource(new File(testDocumentDir, "open-office-02.pdf"));
+        DataSource documentDataSource = new FileDataSource(new File(testDocumentDir, "open-office-02-similar.pdf"));
+
+        assertFalse(pdfDocumentComparator.compareDocuments(referenceDataSource, documentDataSource).isIdentical());
+        assertTrue(pdfDocumentComparator.compareDocuments(referenceDataSource, referenceDataSource).isIdentical());
+        assertEquals(1, pageImageCache.size());
+        assertEquals(1, pageImageCache.getNrOfMisses());
+        assertEquals(1, pageImageCache.getNrOfHits());
+        assertTrue(pageImageCache.getNrOfBytes() > 0);
+    }
+
+    /**
+     * We compare documents with a different number of pages where the additional pages are reported as inserted.
+     */
+    @Test
+    public void testPdfDocumentsWithPageAlignment() throws Exception {
+        DataSource referenceDataSource = new FileDataSource(new File(testDocumentDir, "multi-page-01.pdf"));
+        DataSource documentDataSource = new FileDataSource(new File(testDocumentDir, "open-office-01.pdf"));
+        PdfDocumentComparator pdfDocumentComparator = new PdfDocumentComparator().setPageAlignment(true);
+
+        PdfDocumentComparatorResult pdfDocumentComparatorResult = pdfDocumentComparator.compareDocuments(referenceDataSource, referenceDataSource);
+        assertTrue(pdfDocumentComparatorResult.isIdentical());
+        assertEquals(3, pdfDocumentComparatorResult.getImageDifferResultList().size());
+        assertTrue(pdfDocumentComparatorResult.getInsertedPageList().isEmpty());
+
+        pdfDocumentComparatorResult = pdfDocumentComparator.compareDocuments(referenceDataSource, documentDataSource);
+        new PdfDocumentComparatorResultWriter().writeToDirectory(testResultDir, "testPdfDocumentsWithPageAlignment", pdfDocumentComparatorResult);
+        assertFalse(pdfDocumentComparatorResult.isIdentical());
+        assertTrue(pdfDocumentComparatorResult.hasInsertedOrRemovedPages());
+        assertEquals(2, pdfDocumentComparatorResult.getRemovedPageList().size());
+        assertEquals(1, pdfDocumentComparatorResult.getImageDifferResultList().size());
+    }
+
+    /**
+     * We compare documents parsed with scratch files which are removed after the comparison.
+     */
+    @Test
+    public void testPdfDocumentsWithScratchFiles() throws Exception {
+        File scratchDirectory = new File("./target/out/scratch");
+        scratchDirectory.mkdirs();
+        DataSource referenceDataSource = new FileDataSource(new File(testDocumentDir, "open-office-02.pdf"));
+        DataSource documentDataSource = new FileDataSource(new File(testDocumentDir, "open-office-02-similar.pdf"));
+        PdfDocumentComparator pdfDocumentComparator = new PdfDocumentComparator().setScratchDirectory(scratchDirectory);
+
+        assertTrue(pdfDocumentComparator.compareDocuments(referenceDataSource, referenceDataSource).isIdentical());
+        assertFalse(pdfDocumentComparator.compareDocuments(referenceDataSource, documentDataSource).isIdentical());
+        assertEquals(0, scratchDirectory.list().length);
+    }
+
+    /**
+     * We compare documents at a low resolution first and re-render the different pages at a high resolution.
+     */
+    @Test
+    public void testPdfDocumentsCoarseToFine() throws Exception {
+        DataSource referenceDataSource = new FileDataSource(new File(testDocumentDir, "open-office-02.pdf"));
+        DataSource documentDataSource = new FileDataSource(new File(testDocumentDir, "open-office-02-similar.pdf"));
+        PdfDocumentComparator pdfDocumentComparator = new PdfDocumentComparator().setResolution(144).setCoarseResolution(36);
+
+        assertTrue(pdfDocumentComparator.compareDocuments(referenceDataSource, referenceDataSource).isIdentical());
+
+        PdfDocumentComparatorResult pdfDocumentComparatorResult = pdfDocumentComparator.compareDocuments(referenceDataSource, documentDataSource);
+        assertFalse(pdfDocumentComparatorResult.isIdentical());
+        assertEquals(1, pdfDocumentComparatorResult.getImageDifferResultList().size());
+        assertTrue(pdfDocumentComparatorResult.getImageDifferResultList().get(0).getBufferedImage().getWidth() > 1000);
+    }
+
+    /**
+     * We compare documents rendered as bilevel images using the packed bilevel comparator.
+     */
+    @Test
+    public void testBilevelPdfDocuments() throws Exception {
+        DataSource referenceDataSource = new FileDataSource(new File(testDocumentDir, "open-office-02.pdf"));
+        DataSource documentDataSource = new FileDataSource(new File(testDocumentDir, "open-office-02-similar.pdf"));
+        PdfDocumentComparator pdfDocumentComparator = new PdfDocumentComparator().setColor("bilevel").setImageComparator(new BilevelImageComparator());
+
+        assertTrue(pdfDocumentComparator.compareDocuments(referenceDataSource, referenceDataSource).isIdentical());
+        assertFalse(pdfDocumentComparator.compareDocuments(referenceDataSource, documentDataSource).isIdentical());
+    }
+
+    /**
+     * We compare documents rendering the pages into pooled images.
+     */
+    @Test
+    public void testPdfDocumentsWithBufferedImagePool() throws Exception {
+        DataSource multiPageDataSource = new FileDataSource(new File(testDocumentDir, "multi-page-01.pdf"));
+        DataSource referenceDataSource = new FileDataSource(new File(testDocumentDir, "open-office-02.pdf"));
+        DataSource documentDataSource = new FileDataSource(new File(testDocumentDir, "open-office-02-similar.pdf"));
+        BufferedImagePool bufferedImagePool = new BufferedImagePool(8);
+        PdfDocumentComparator pdfDocumentComparator = new PdfDocumentComparator().setBufferedImagePool(bufferedImagePool).setImageComparator(new XorImageComparator(false, false, bufferedImagePool));
+
+        assertTrue(pdfDocumentComparator.compareDocuments(multiPageDataSource, multiPageDataSource).isIdentical());
+        assertTrue(pdfDocumentComparator.setPipelined(true).compareDocuments(multiPageDataSource, multiPageDataSource).isIdentical());
+        assertTrue(bufferedImagePool.getNrOfHits() > 0);
+
+        PdfDocumentComparatorResult expectedResult = new PdfDocumentComparator().compareDocuments(referenceDataSource, documentDataSource);
+        PdfDocumentComparatorResult pdfDocumentComparatorResult = pdfDocumentComparator.setPipelined(false).compareDocuments(referenceDataSource, documentDataSource);
+        assertFalse(pdfDocumentComparatorResult.isIdentical());
+        assertTrue(new XorImageDiffer().isIdentical(expectedResult.getImageDifferResultList().get(0).getBufferedImage(), pdfDocumentComparatorResult.getImageDifferResultList().get(0).getBufferedImage(), 0));
+    }
+
+    /**
+     * We render rotated pages into pooled images which must match the pages rendered by PDFBox.
+     */
+    @Test
+    public void testRotatedPagesWithBufferedImagePool() throws Exception {
+        PDDocument document = new PDDocumentFactory().create(new File(testDocumentDir, "open-office-02.pdf"));
+        BufferedImagePool bufferedImagePool = new BufferedImagePool(4);
+        PdfToImageConverter pdfToImageConverter = new PdfToImageConverter();
+
+        try {
+            PDPage page = (PDPage) document.getDocumentCatalog().getAllPages().get(0);
+            for (int rotation = 0; rotation < 360; rotation += 90) {
+                page.setRotation(rotation);
+                BufferedImage expectedImage = pdfToImageConverter.toImage(page, 72, "rgb");
+                BufferedImage pooledImage = pdfToImageConverter.toImage(page, 72, "rgb", bufferedImagePool);
+                assertEquals(expectedImage.getWidth(), pooledImage.getWidth());
+                assertEquals(expectedImage.getHeight(), pooledImage.getHeight());
+                assertTrue("rotation=" + rotation, new XorImageDiffer().isIdentical(expectedImage, pooledImage, 0));
+                bufferedImagePool.release(pooledImage);
+            }
+        } finally {
+            document.close();
+        }
+    }
+
+    /**
+     * We compare documents sharing parsed fonts and decoded images between the documents.
+     */
+    @Test
+    public void testPdfDocumentsWithResourceCache() throws Exception {
+        DataSource referenceDataSource = new FileDataSource(new File(testDocumentDir, "open-office-02.pdf"));
+        DataSource documentDataSource = new FileDataSource(new File(testDocumentDir, "open-office-02-similar.pdf"));
+        PdfResourceCache resourceCache = new PdfResourceCache(64, 64 * 1024 * 1024);
+        PdfDocumentComparator pdfDocumentComparator = new PdfDocumentComparator().setResourceCache(resourceCache);
+
+        assertTrue(pdfDocumentComparator.compareDocuments(referenceDataSource, referenceDataSource).isIdentical());
+        PdfDocumentComparatorResult pdfDocumentComparatorResult = pdfDocumentComparator.compareDocuments(referenceDataSource, documentDataSource);
+        assertTrue(resourceCache.getNrOfFontHits() > 0);
+        assertEquals(0, resourceCache.getNrOfImageHits());
+        assertEquals(0, resourceCache.getNrOfImageMisses());
+
+        PdfDocumentComparatorResult expectedResult = new PdfDocumentComparator().compareDocuments(referenceDataSource, documentDataSource);
+        assertFalse(pdfDocumentComparatorResult.isIdentical());
+        assertTrue(new XorImageDiffer().isIdentical(expectedResult.getImageDifferResultList().get(0).getBufferedImage(), pdfDocumentComparatorResult.getImageDifferResultList().get(0).getBufferedImage(), 0));
+    }
+
+    /**
+     * We compare a document drawing the same image on each page where the image is only decoded once.
+     */
+    @Test
+    public void testPdfDocumentWithImagesAndResourceCache() throws Exception {
+        File file = new File(testResultDir, "testPdfDocumentWithImagesAndResourceCache.pdf");
+        BufferedImage bufferedImage = new BufferedImage(64, 64, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = bufferedImage.createGraphics();
+        graphics.setColor(Color.RED);
+        graphics.fillRect(16, 16, 32, 32);
+        graphics.dispose();
+
+        testResultDir.mkdirs();
+        PDDocument document = new PDDocument();
+
+        try {
+            PDXObjectImage image = new PDPixelMap(document, bufferedImage);
+            for (int i = 0; i < 3; i++) {
+                PDPage page = new PDPage();
+                document.addPage(page);
+                PDPageContentStream contentStream = new PDPageContentStream(document, page);
+                contentStream.drawXObject(image, 100, 100, 200, 200);
+                contentStream.close();
+            }
+            document.save(file);
+        } finally {
+            document.close();
+        }
+
+        DataSource dataSource = new FileDataSource(file);
+        PdfResourceCache resourceCache = new PdfResourceCache(64, 64 * 1024 * 1024);
+        PdfDocumentComparatorResult pdfDocumentComparatorResult = new PdfDocumentComparator().setResourceCache(resourceCache).compareDocuments(dataSource, dataSource);
+
+        assertTrue(pdfDocumentComparatorResult.isIdentical());
+        assertEquals(1, resourceCache.getNrOfImages());
+        assertEquals(1, resourceCache.getNrOfImageMisses());
+        assertEquals(5, resourceCache.getNrOfImageHits());
+    }
+
+    /**
+     * We write the diff images of identical directories using a pool of encoder threads.
+     */
+    @Test
+    public void testAsyncResultWriter() throws Exception {
+        PdfDocumentComparatorResults pdfDocumentComparatorResults = new PdfDocumentComparator().compareDirectories(testDocumentDir, testDocumentDir);
+        File resultDirectory = new File(testResultDir, "testAsyncResultWriter");
+        AsyncPdfDocumentComparatorResultWriter resultWriter = new AsyncPdfDocumentComparatorResultWriter(2, 1);
+
+        try {
+            resultWriter.setCompressionQuality(1.0f);
+            resultWriter.writeToDirectory(resultDirectory, pdfDocumentComparatorResults, false);
+            resultWriter.flush();
+            assertEquals(4, resultDirectory.listFiles().length);
+            assertTrue(new File(new File(resultDirectory, "open-office-01.pdf"), "page-0.png").length() > 0);
+        } finally {
+            resultWriter.close();
+        }
+    }
+
+    /**
+     * We write the diff images using a pool of encoder threads where an error while encoding is reported.
+     */
+    @Test
+    public void testAsyncResultWriterWithError() throws Exception {
+        PdfDocumentComparatorResults pdfDocumentComparatorResults = new PdfDocumentComparator().compareDirectories(testDocumentDir, testDocumentDir);
+        File resultDirectory = new File(testResultDir, "testAsyncResultWriterWithError");
+        AsyncPdfDocumentComparatorResultWriter resultWriter = new AsyncPdfDocumentComparatorResultWriter(2, 1);
+
+        try {
+            resultWriter.setMetrics(new Metrics() {
+                @Override
+                public boolean isEnabled() {
+                    return true;
+                }
+
+                @Override
+                public long startTimer() {
+                    return 0;
+                }
+
+                @Override
+                public void stopTimer(String name, long startTime) {
+                    throw new OutOfMemoryError("Encoding the diff image failed");
+                }
+
+                @Override
+                public void increment(String name, long delta) {
+                }
+            });
+            resultWriter.writeToDirectory(resultDirectory, pdfDocumentComparatorResults, false);
+            resultWriter.flush();
+            fail("The error was not reported");
+        } catch (OutOfMemoryError e) {
+            assertEquals("Encoding the diff image failed", e.getMessage());
+        } finally {
+            resultWriter.close();
+        }
+    }
+
+    /**
+     * We compare two directories where each result is passed to a listener instead of being kept.
+     */
+    @Test
+    public void testDifferentDirectoriesWithListener() throws Exception {
+        File referenceDirectory = new File("./src/test/documents/directory/reference");
+        File documentDirectory = new File("./src/test/documents/directory/current");
+        final List<String> referenceNameList = new ArrayList<String>();
+
+        PdfDocumentComparatorResults pdfDocumentComparatorResults = new PdfDocumentComparator().setSortedTraversal(true).setNrOfThreads(2).compareDirectories(referenceDirectory, documentDirectory, new PdfDocumentComparatorListener() {
+            @Override
+            public void onResult(PdfDocumentComparatorResult pdfDocumentComparatorResult) throws Exception {
+                referenceNameList.add(pdfDocumentComparatorResult.getReferenceName());
+            }
+        });
+
+        assertEquals(3, referenceNameList.size());
+        assertEquals(referenceNameList, sort(referenceNameList));
+        assertTrue(pdfDocumentComparatorResults.getPdfDocumentComparatorResultList().isEmpty());
+        assertEquals(3, pdfDocumentComparatorResults.size());
+        assertEquals(1, pdfDocumentComparatorResults.getNrOfMatches());
+        assertEquals(1, pdfDocumentComparatorResults.getNrOfDiffs());
+        assertEquals(1, pdfDocumentComparatorResults.getNrOfErrors());
+
+        File resultDirectory = new File(testResultDir, "testDifferentDirectoriesWithListener");
+        PdfDocumentComparatorListener resultWriterListener = new PdfDocumentComparatorResultWriter().createListener(resultDirectory, true);
+        assertEquals(1, new PdfDocumentComparator().compareDirectories(referenceDirectory, documentDirectory, resultWriterListener).getNrOfDiffs());
+        assertEquals(2, resultDirectory.listFiles().length);
+    }
+
+    /**
+     * We compare directories concurrently where the memory governor only admits one page pair at a time.
+     */
+    @Test
+    public void testDifferentDirectoriesWithMemoryGovernor() throws Exception {
+        File referenceDirectory = new File("./src/test/documents/directory/reference");
+        File documentDirectory = new File("./src/test/documents/directory/current");
+        File referenceFile = new File(testDocumentDir, "open-office-01.pdf");
+        PDDocument document = new PDDocumentFactory().create(referenceFile);
+
+        try {
+            PDPage page = (PDPage) document.getDocumentCatalog().getAllPages().get(0);
+            assertEquals(595 * 842 * 4, new PdfToImageConverter().getNrOfBytes(page, 72, "rgb"));
+        } finally {
+            document.close();
+        }
+
+        PdfPageMemoryGovernor memoryGovernor = new PdfPageMemoryGovernor(1);
+        PdfDocumentComparator pdfDocumentComparator = new PdfDocumentComparator().setNrOfThreads(4).setMemoryGovernor(memoryGovernor);
+        PdfDocumentComparatorResults pdfDocumentComparatorResults = pdfDocumentComparator.compareDirectories(referenceDirectory, documentDirectory);
+        assertEquals(1, pdfDocumentComparatorResults.getNrOfMatches());
+        assertEquals(1, pdfDocumentComparatorResults.getNrOfDiffs());
+        assertEquals(0, memoryGovernor.getNrOfBytes());
+        assertTrue(pdfDocumentComparator.setPipelined(true).compareFiles(referenceFile, referenceFile).isIdentical());
+        assertEquals(0, memoryGovernor.getNrOfBytes());
+    }
+
+    /**
+     * We compare two directories while recording the metrics exposed by JMX.
+     */
+    @Test
+    public void testDifferentDirectoriesWithMetrics() throws Exception {
+        File referenceDirectory = new File("./src/test/documents/directory/reference");
+        File documentDirectory = new File("./src/test/documents/directory/current");
+        JmxMetrics metrics = new JmxMetrics("org.github.jipsg.test");
+
+        try {
+            new PdfDocumentComparator().setMetrics(metrics).compareDirectories(referenceDirectory, documentDirectory);
+            assertEquals(2, metrics.getCounter("documents").getCount());
+            assertEquals(1, metrics.getCounter("errors").getCount());
+            assertEquals(1, metrics.getCounter("diffs").getCount());
+            assertEquals(4, metrics.getTimer("parse").getCount());
+            assertEquals(metrics.getCounter("pages").getCount(), metrics.getTimer("page").getCount());
+            assertTrue(metrics.getCounter("renderedBytes").getCount() > 0);
+            assertTrue(metrics.getTimer("render").getPercentileNanos(0.5) <= metrics.getTimer("render").getPercentileNanos(0.99));
+            assertEquals(metrics.getTimer("compare").getCount(), ManagementFactory.getPlatformMBeanServer().getAttribute(new ObjectName("org.github.jipsg.test:type=Timer,name=compare"), "Count"));
+            assertEquals(metrics.getTimer("compare").getCount(), metrics.getTimer("diff").getCount());
+            assertEquals(metrics.getTimer("compare").getCount(), metrics.getTimer("histogram").getCount());
+
+            // a second instance using the same domain only records in memory
+            JmxMetrics otherMetrics = new JmxMetrics("org.github.jipsg.test");
+            new PdfDocumentComparator().setMetrics(otherMetrics).compareDirectories(referenceDirectory, documentDirectory);
+            assertEquals(2, otherMetrics.getCounter("documents").getCount());
+            otherMetrics.unregister();
+        } finally {
+            metrics.unregister();
+        }
+    }
+
+    /**
+     * We record the pages rendered by pipelined rendering where cached pages are not rendered.
+     */
+    @Test
+    public void testPipelinedPdfDocumentsWithMetrics() throws Exception {
+        DataSource dataSource = new FileDataSource(new File(testDocumentDir, "multi-page-01.pdf"));
+        JmxMetrics metrics = new JmxMetrics("org.github.jipsg.test.pipelined");
+
+        try {
+            PdfDocumentComparator pdfDocumentComparator = new PdfDocumentComparator().setPipelined(true).setPageImageCache(new PdfPageImageCache(Long.MAX_VALUE)).setMetrics(metrics);
+            pdfDocumentComparator.compareDocuments(dataSource, dataSource);
+            assertEquals(6, metrics.getTimer("render").getCount());
+            long renderedBytes = metrics.getCounter("renderedBytes").getCount();
+            assertTrue(renderedBytes > 0);
+
+            pdfDocumentComparator.compareDocuments(dataSource, dataSource);
+            assertEquals(9, metrics.getTimer("render").getCount());
+            assertEquals(renderedBytes + renderedBytes / 2, metrics.getCounter("renderedBytes").getCount());
+        } finally {
+            metrics.unregister();
+        }
+    }
+
+    /**
+     * We compare two directories twice where the second run takes the results from the manifest.
+     */
+    @Test
+    public void testDifferentDirectoriesWithManifest() throws Exception {
+        File referenceDirectory = new File("./src/test/documents/directory/reference");
+        File documentDirectory = new File("./src/test/documents/directory/current");
+        File manifestDirectory = new File(testResultDir, "testDifferentDirectoriesWithManifest");
+        File[] manifestFiles = manifestDirectory.listFiles();
+
+        for (int i = 0; manifestFiles != null && i < manifestFiles.length; i++) {
+            assertTrue(manifestFiles[i].delete());
+        }
+
+        PdfDocumentComparatorManifest manifest = new PdfDocumentComparatorManifest(manifestDirectory);
+        PdfDocumentComparatorResults expectedResults = new PdfDocumentComparator().setManifest(manifest).compareDirectories(referenceDirectory, documentDirectory);
+        assertEquals(2, manifestDirectory.listFiles().length);
+
+        JmxMetrics metrics = new JmxMetrics("org.github.jipsg.test.manifest");
+        try {
+            PdfDocumentComparatorResults pdfDocumentComparatorResults = new PdfDocumentComparator().setManifest(manifest).setMetrics(metrics).compareDirectories(referenceDirectory, documentDirectory);
+            assertEquals(2, metrics.getCounter("skipped").getCount());
+            assertEquals(expectedResults.getNrOfMatches(), pdfDocumentComparatorResults.getNrOfMatches());
+            assertEquals(expectedResults.getNrOfDiffs(), pdfDocumentComparatorResults.getNrOfDiffs());
+            assertEquals(expectedResults.getNrOfErrors(), pdfDocumentComparatorResults.getNrOfErrors());
+            for (int i = 0; i < expectedResults.size(); i++) {
+                PdfDocumentComparatorResult expectedResult = expectedResults.getPdfDocumentComparatorResultList().get(i);
+                PdfDocumentComparatorResult pdfDocumentComparatorResult = pdfDocumentComparatorResults.getPdfDocumentComparatorResultList().get(i);
+                assertEquals(expectedResult.isIdentical(), pdfDocumentComparatorResult.isIdentical());
+                assertEquals(expectedResult.getReferenceName(), pdfDocumentComparatorResult.getReferenceName());
+                assertEquals(expectedResult.getDocumentNrOfPages(), pdfDocumentComparatorResult.getDocumentNrOfPages());
+            }
+        } finally {
+            metrics.unregister();
+        }
+
+        // changing the settings of the image comparator compares all pairs again
+
+        new PdfDocumentComparator().setManifest(manifest).setImageComparator(new XorVerdictImageComparator(1)).compareDirectories(referenceDirectory, documentDirectory);
+        JmxMetrics thresholdMetrics = new JmxMetrics("org.github.jipsg.test.manifest.threshold");
+        try {
+            PdfDocumentComparatorResults pdfDocumentComparatorResults = new PdfDocumentComparator().setManifest(manifest).setMetrics(thresholdMetrics).setImageComparator(new XorVerdictImageComparator(255)).compareDirectories(referenceDirectory, documentDirectory);
+            assertEquals(0, thresholdMetrics.getCounter("skipped").getCount());
+            assertEquals(0, pdfDocumentComparatorResults.getNrOfDiffs());
+        } finally {
+            thresholdMetrics.unregister();
+        }
+    }
+
+    /**
+     * We compare a directory tree with itself where the relative paths are used as names.
+     */
+    @Test
+    public void testCompareIdenticalDirectoriesRecursive() throws Exception {
+        File directory = new File("./src/test/documents");
+        PdfDocumentComparatorResults pdfDocumentComparatorResults = new PdfDocumentComparator().setRecursive(true).setSortedTraversal(true).setNrOfThreads(2).compareDirectories(directory, directory);
+        List<String> referenceNameList = new ArrayList<String>();
+
+        for (PdfDocumentComparatorResult pdfDocumentComparatorResult : pdfDocumentComparatorResults.getPdfDocumentComparatorResultList()) {
+            referenceNameList.add(pdfDocumentComparatorResult.getReferenceName());
+        }
+
+        assertTrue(pdfDocumentComparatorResults.isIdentical());
+        assertEquals(9, pdfDocumentComparatorResults.size());
+        assertEquals("directory/current/open-office-01.pdf", referenceNameList.get(0));
+        assertEquals("pdf/open-office-02.pdf", referenceNameList.get(8));
+        assertEquals(referenceNameList, sort(referenceNameList));
+        assertEquals(0, new PdfDocumentComparator().compareDirectories(directory, directory).size());
+
+        // without sorting the documents are compared in the order of the directory streams
+        List<String> streamedNameList = new ArrayList<String>();
+
+        for (PdfDocumentComparatorResult pdfDocumentComparatorResult : new PdfDocumentComparator().setRecursive(true).setNrOfThreads(2).compareDirectories(directory, directory).getPdfDocumentComparatorResultList()) {
+            streamedNameList.add(pdfDocumentComparatorResult.getReferenceName());
+        }
+
+        assertEquals(referenceNameList, sort(streamedNameList));
+    }
+
+    /**
+     * We compare two directories using two worker processes and merge their results.
+     */
+    @Test
+    public void testDifferentDirectoriesSharded() throws Exception {
+        File referenceDirectory = new File("./src/test/documents/directory/reference");
+        File documentDirectory = new File("./src/test/documents/directory/current");
+        File workDirectory = new File(testResultDir, "testDifferentDirectoriesSharded");
+        int nrOfDocuments = 0;
+
+        for (int i = 0; i < 3; i++) {
+            nrOfDocuments += new PdfDocumentComparator().setShard(i, 3).compareDirectories(referenceDirectory, documentDirectory).size();
+        }
+
+        PdfDocumentComparatorResults pdfDocumentComparatorResults = new PdfShardedDirectoryComparator(2, workDirectory).setJavaOptions("-Xmx256m").compareDirectories(referenceDirectory, documentDirectory);
+        assertEquals(3, nrOfDocuments);
+        assertEquals(3, pdfDocumentComparatorResults.size());
+        assertEquals(1, pdfDocumentComparatorResults.getNrOfMatches());
+        assertEquals(1, pdfDocumentComparatorResults.getNrOfDiffs());
+        assertEquals(1, pdfDocumentComparatorResults.getNrOfErrors());
+        assertEquals("multi-page-01.pdf", pdfDocumentComparatorResults.getPdfDocumentComparatorResultList().get(0).getReferenceName());
+        assertFalse(pdfDocumentComparatorResults.getPdfDocumentComparatorResultList().get(2).isIdentical());
+        assertEquals(1, pdfDocumentComparatorResults.getPdfDocumentComparatorResultList().get(2).getImageDifferResultList().size());
+
+        // the merged results are ordered like a sorted traversal where "a/x.pdf" sorts before "a-b/x.pdf"
+        File treeDirectory = new File(workDirectory, "tree");
+        File document = new File(testDocumentDir, "open-office-01.pdf");
+        String[] relativePaths = {"z.pdf", "a/x.pdf", "a/y/x.pdf", "a-b/x.pdf"};
+
+        for (String relativePath : relativePaths) {
+            File file = new File(treeDirectory, relativePath);
+            file.getParentFile().mkdirs();
+            Files.copy(document.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        List<String> shardedNameList = new ArrayList<String>();
+        List<String> traversalNameList = new ArrayList<String>();
+
+        for (PdfDocumentComparatorResult pdfDocumentComparatorResult : new PdfShardedDirectoryComparator(2, workDirectory).setRecursive(true).compareDirectories(treeDirectory, treeDirectory).getPdfDocumentComparatorResultList()) {
+            shardedNameList.add(pdfDocumentComparatorResult.getReferenceName());
+        }
+
+        for (PdfDocumentComparatorResult pdfDocumentComparatorResult : new PdfDocumentComparator().setRecursive(true).setSortedTraversal(true).compareDirectories(treeDirectory, treeDirectory).getPdfDocumentComparatorResultList()) {
+            traversalNameList.add(pdfDocumentComparatorResult.getReferenceName());
+        }
+
+        assertEquals(Arrays.asList(relativePaths), shardedNameList);
+        assertEquals(Arrays.asList(relativePaths), traversalNameList);
+    }
+
     @Test
     public void testCompareIdenticalDirectories() throws Exception {
         PdfDocumentComparatorResults pdfDocumentComparatorResults = new PdfDocumentComparator().compareDirectories(testDocumentDir, testDocumentDir);
@@ -139,4 +787,34 @@ public class PdfDocumentComparatorTest {
         assertEquals(1, pdfDocumentComparatorResults.getNrOfErrors());
         assertEquals(2, resultDirectory.listFiles().length);
     }
+
+    /**
+     * Compare two directories using multiple threads and ensure that the order of the results
+     * is the same as for the sequential comparison.
+     */
+    @Test
+    public void testDifferentDirectoriesInParallel() throws Exception {
+        File referenceDirectory = new File("./src/test/documents/directory/reference");
+        File documentDirectory = new File("./src/test/documents/directory/current");
+
+        PdfDocumentComparatorResults expectedResults = new PdfDocumentComparator().compareDirectories(referenceDirectory, documentDirectory);
+        PdfDocumentComparatorResults pdfDocumentComparatorResults = new PdfDocumentComparator().setNrOfThreads(3).compareDirectories(referenceDirectory, documentDirectory);
+        assertEquals(3, pdfDocumentComparatorResults.size());
+        assertEquals(1, pdfDocumentComparatorResults.getNrOfMatches());
+        assertEquals(1, pdfDocumentComparatorResults.getNrOfDiffs());
+        assertEquals(1, pdfDocumentComparatorResults.getNrOfErrors());
+
+        for (int i = 0; i < expectedResults.size(); i++) {
+            PdfDocumentComparatorResult expectedResult = expectedResults.getPdfDocumentComparatorResultList().get(i);
+            PdfDocumentComparatorResult pdfDocumentComparatorResult = pdfDocumentComparatorResults.getPdfDocumentComparatorResultList().get(i);
+            assertEquals(expectedResult.getReferenceName(), pdfDocumentComparatorResult.getReferenceName());
+            assertEquals(expectedResult.isIdentical(), pdfDocumentComparatorResult.isIdentical());
+        }
+    }
+
+    private static List<String> sort(List<String> list) {
+        List<String> result = new ArrayList<String>(list);
+        Collections.sort(result);
+        return result;
+    }
 }
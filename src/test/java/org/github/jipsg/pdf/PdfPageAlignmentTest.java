@@ -0,0 +1,65 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.pdf;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class PdfPageAlignmentTest {
+
+    private static final long COVER_PAGE = 0xFFFF0000FFFF0000L;
+
+    @Test
+    public void testIdenticalPages() {
+        PdfPageAlignment pdfPageAlignment = PdfPageAlignment.align(new long[]{1L, 2L, 4L}, new long[]{1L, 2L, 4L}, 0);
+        assertEquals(3, pdfPageAlignment.getNrOfPagePairs());
+        assertFalse(pdfPageAlignment.hasInsertedOrRemovedPages());
+    }
+
+    @Test
+    public void testInsertedCoverPage() {
+        PdfPageAlignment pdfPageAlignment = PdfPageAlignment.align(new long[]{1L, 2L, 4L}, new long[]{COVER_PAGE, 1L, 2L, 4L}, 0);
+        assertEquals(3, pdfPageAlignment.getNrOfPagePairs());
+        assertEquals(Collections.singletonList(0), pdfPageAlignment.getInsertedPageList());
+        assertTrue(pdfPageAlignment.getRemovedPageList().isEmpty());
+        assertEquals(0, pdfPageAlignment.getReferencePageIndex(0));
+        assertEquals(1, pdfPageAlignment.getDocumentPageIndex(0));
+    }
+
+    @Test
+    public void testRemovedPage() {
+        PdfPageAlignment pdfPageAlignment = PdfPageAlignment.align(new long[]{1L, 2L, 4L}, new long[]{1L, 4L}, 0);
+        assertEquals(2, pdfPageAlignment.getNrOfPagePairs());
+        assertEquals(Collections.singletonList(1), pdfPageAlignment.getRemovedPageList());
+        assertTrue(pdfPageAlignment.getInsertedPageList().isEmpty());
+    }
+
+    /**
+     * A modified page is paired with its counterpart instead of being reported as removed and inserted.
+     */
+    @Test
+    public void testModifiedPage() {
+        PdfPageAlignment pdfPageAlignment = PdfPageAlignment.align(new long[]{1L, 2L, 4L}, new long[]{1L, COVER_PAGE, 4L}, 0);
+        assertEquals(3, pdfPageAlignment.getNrOfPagePairs());
+        assertFalse(pdfPageAlignment.hasInsertedOrRemovedPages());
+        assertEquals(Arrays.asList(0, 1, 2), Arrays.asList(pdfPageAlignment.getDocumentPageIndex(0), pdfPageAlignment.getDocumentPageIndex(1), pdfPageAlignment.getDocumentPageIndex(2)));
+    }
+}